@@ -0,0 +1,79 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.http.URLConnectionTransport;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2Session;
+import com.oliverdunk.jb2.models.B2UploadRequest;
+import com.oliverdunk.jb2.models.BucketType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of a single API call, from encoding the request to decoding the response, using
+ * b2_get_upload_url as a typical small call. With an error rate, some calls are retried, which measures the
+ * cost of the retry path with the backoff delays removed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class B2CallBenchmark {
+
+    @Param({"0"})
+    public long latency;
+
+    @Param({"0", "0.1"})
+    public double errorRate;
+
+    private B2StandInServer server;
+    private B2Client client;
+    private B2Session session;
+    private final B2Bucket bucket = new B2Bucket("benchmark", "bucket", BucketType.ALL_PRIVATE);
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new B2StandInServer();
+        server.setLatency(latency);
+        server.setErrorRate(errorRate);
+        client = new B2Client(new URLConnectionTransport(), server.getURL());
+        client.setRetryPolicy(new B2RetryPolicy(20, 20, 0, 0));
+        session = client.authorizeAccount("account", "key");
+    }
+
+    @TearDown
+    public void tearDown(){
+        server.close();
+    }
+
+    @Benchmark
+    public B2UploadRequest roundTrip(){
+        return client.getUploadURL(session, bucket);
+    }
+
+    @Benchmark
+    public B2UploadRequest roundTripWithMetrics(MetricsState metrics){
+        return metrics.client.getUploadURL(session, bucket);
+    }
+
+    /**
+     * A second client which reports every call to a B2MetricsRecorder, to measure the cost of instrumentation.
+     */
+    @State(Scope.Benchmark)
+    public static class MetricsState {
+
+        private B2Client client;
+
+        @Setup
+        public void setUp(B2CallBenchmark benchmark){
+            client = new B2Client(new URLConnectionTransport(), benchmark.server.getURL());
+            client.setRetryPolicy(benchmark.client.getRetryPolicy());
+            client.setInstrumentation(new B2MetricsRecorder());
+        }
+
+    }
+
+}
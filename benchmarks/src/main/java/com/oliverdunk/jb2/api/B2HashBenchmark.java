@@ -0,0 +1,67 @@
+package com.oliverdunk.jb2.api;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures hashing of local files, both on its own as done before uploads which supply their hash, and combined
+ * with sending as done by uploads which send their hash after the content.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class B2HashBenchmark {
+
+    //Discards everything written to it, so only hashing and copying are measured.
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b){}
+
+        @Override
+        public void write(byte[] bytes, int offset, int length){}
+    };
+
+    @Param({"1048576", "67108864"})
+    public int size;
+
+    private File file;
+    private FileChannel channel;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("jb2-hash", ".bin");
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        Files.write(file.toPath(), data);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        channel.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public String fileHash() throws IOException {
+        return B2Client.getHash(channel, size);
+    }
+
+    @Benchmark
+    public String writeWithHash() throws IOException {
+        channel.position(0);
+        return B2Client.writeWithHash(channel, size, DISCARD);
+    }
+
+}
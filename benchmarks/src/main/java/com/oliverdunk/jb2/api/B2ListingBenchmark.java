@@ -0,0 +1,127 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.http.B2Connection;
+import com.oliverdunk.jb2.http.URLConnectionTransport;
+import com.oliverdunk.jb2.json.JsonWriter;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2FilePage;
+import com.oliverdunk.jb2.models.B2Session;
+import com.oliverdunk.jb2.models.BucketType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures listing, both decoding a full page of 10000 files from memory, which isolates the JSON decoding,
+ * and paging through a whole bucket on the stand-in server with a B2FileLister.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class B2ListingBenchmark {
+
+    @Param({"10000"})
+    public int files;
+
+    @Param({"1000", "10000"})
+    public int pageSize;
+
+    private B2StandInServer server;
+    private B2Client client;
+    private B2Session session;
+    private final B2Bucket bucket = new B2Bucket("benchmark", "bucket", BucketType.ALL_PRIVATE);
+    //A b2_list_file_names response holding a full page of files.
+    private byte[] page;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new B2StandInServer();
+        server.addFiles("photos/2016/", files, 1024 * 1024);
+        client = new B2Client(new URLConnectionTransport(), server.getURL());
+        session = client.authorizeAccount("account", "key");
+
+        JsonWriter response = new JsonWriter().beginObject().name("files").beginArray();
+        for(int i = 0; i < B2FileLister.MAXIMUM_FILE_COUNT; i++){
+            response.beginObject()
+                    .name("accountId").value("account")
+                    .name("action").value("upload")
+                    .name("bucketId").value(bucket.getID())
+                    .name("contentLength").value(1024 * 1024 + i)
+                    .name("contentSha1").value(String.format("%040x", i))
+                    .name("contentType").value("image/jpeg")
+                    .name("fileId").value("4_zbucket_f" + String.format("%020d", i))
+                    .name("fileInfo").beginObject().name("src_last_modified_millis").value("1466094221000").endObject()
+                    .name("fileName").value("photos/2016/IMG_" + String.format("%06d", i) + ".jpg")
+                    .name("uploadTimestamp").value(1466094221000L + i)
+                    .endObject();
+        }
+        page = response.endArray().name("nextFileName").value((String) null).endObject().toByteArray();
+    }
+
+    @TearDown
+    public void tearDown(){
+        server.close();
+    }
+
+    @Benchmark
+    public B2FilePage decodePage() throws IOException {
+        return B2Client.readResponse(new ResponseConnection(page), B2Client.FILE_PAGE);
+    }
+
+    @Benchmark
+    public long listBucket(){
+        B2FileLister lister = new B2FileLister(client, session, bucket);
+        lister.setMaxFileCount(pageSize);
+        long size = 0;
+        for(B2File file : lister) size += file.getSize();
+        return size;
+    }
+
+    /**
+     * Connection whose response has already been received, so decoding can be measured without any I/O.
+     */
+    private static class ResponseConnection implements B2Connection {
+
+        private final byte[] response;
+
+        private ResponseConnection(byte[] response){
+            this.response = response;
+        }
+
+        @Override
+        public void setHeader(String name, String value){}
+
+        @Override
+        public OutputStream getOutputStream(long length){
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getStatusCode(){
+            return 200;
+        }
+
+        @Override
+        public String getHeader(String name){
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream(){
+            return new ByteArrayInputStream(response);
+        }
+
+        @Override
+        public void close(){}
+
+    }
+
+}
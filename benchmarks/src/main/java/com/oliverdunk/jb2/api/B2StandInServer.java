@@ -0,0 +1,432 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.json.JsonFields;
+import com.oliverdunk.jb2.json.JsonReader;
+import com.oliverdunk.jb2.json.JsonWriter;
+import com.oliverdunk.jb2.models.B2File;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP server which answers enough of the B2 API for a B2Client to authorize, list, upload and download
+ * without network access. Uploaded data is read and thrown away, so uploads can be repeated for as long as a
+ * benchmark runs, while files added with addFile can be downloaded. Every request can be slowed down by a fixed
+ * latency, and a fraction of requests can be answered with 503 errors to exercise retries.
+ */
+public class B2StandInServer implements Closeable {
+
+    //Value of X-Bz-Content-Sha1 when the hash is sent as 40 hex digits after the content.
+    private static final String HASH_AT_END = "hex_digits_at_end";
+    private static final int SHA1_HEX_LENGTH = 40;
+    private static final int MAXIMUM_FILE_COUNT = 10000;
+
+    static {
+        //Without TCP_NODELAY, small responses wait for delayed ACKs and every request takes around 40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String URL;
+    private volatile long latency;
+    private volatile double errorRate;
+    private final AtomicLong requests = new AtomicLong(), nextID = new AtomicLong();
+    //Files which can be listed, by name, and which can be downloaded if their contents are known, by ID.
+    private final ConcurrentSkipListMap<String, StoredFile> files = new ConcurrentSkipListMap<String, StoredFile>();
+    private final ConcurrentMap<String, StoredFile> filesByID = new ConcurrentHashMap<String, StoredFile>();
+    //Unfinished large files by ID, holding the length of each part which has been uploaded.
+    private final ConcurrentMap<String, LargeFile> largeFiles = new ConcurrentHashMap<String, LargeFile>();
+
+    /**
+     * Constructs a B2StandInServer listening on a free port of the loopback address, and starts it.
+     *
+     * @throws IOException Thrown if the server could not be started
+     */
+    public B2StandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        URL = "http://127.0.0.1:" + server.getAddress().getPort();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "B2StandInServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Gets the base URL of the server, which should be given to B2Client as its authorization URL.
+     *
+     * @return URL such as http://127.0.0.1:1234
+     */
+    public String getURL(){
+        return URL;
+    }
+
+    /**
+     * Sets how long the server waits before answering each request.
+     *
+     * @param latency Delay in milliseconds
+     */
+    public void setLatency(long latency){
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the fraction of requests, other than b2_authorize_account, which are answered with a 503 error.
+     *
+     * @param errorRate Fraction between 0 and 1
+     */
+    public void setErrorRate(double errorRate){
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Gets the number of requests which the server has received.
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount(){
+        return requests.get();
+    }
+
+    /**
+     * Adds a file which can be listed and downloaded.
+     *
+     * @param name The name of the file
+     * @param contents The contents of the file
+     * @return A B2File representing the stored file
+     */
+    public B2File addFile(String name, byte[] contents){
+        MessageDigest md = B2Client.newSHA1();
+        StoredFile file = new StoredFile(name, "4_z" + nextID.incrementAndGet(), contents.length, B2Client.toHex(md.digest(contents)), contents);
+        store(file);
+        return new B2File(file.name, "application/octet-stream", file.ID, file.size, file.uploadTimestamp, file.sha1);
+    }
+
+    /**
+     * Adds files which can be listed but not downloaded, named with a prefix followed by a zero-padded number.
+     *
+     * @param prefix The start of every name, such as "photos/"
+     * @param count Number of files to add
+     * @param size The size reported for each file
+     */
+    public void addFiles(String prefix, int count, long size){
+        for(int i = 0; i < count; i++){
+            String ID = "4_z" + nextID.incrementAndGet();
+            store(new StoredFile(prefix + String.format("%08d", i), ID, size, String.format("%040x", i), null));
+        }
+    }
+
+    private void store(StoredFile file){
+        files.put(file.name, file);
+        filesByID.put(file.ID, file);
+    }
+
+    /**
+     * Stops the server straight away.
+     */
+    @Override
+    public void close(){
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            String path = exchange.getRequestURI().getPath();
+            String method = path.substring(path.lastIndexOf('/') + 1);
+
+            if(latency > 0) Thread.sleep(latency);
+            if(!method.equals("b2_authorize_account") && errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate){
+                drain(exchange.getRequestBody());
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                error(exchange, 503, "service_unavailable", "Injected error");
+                return;
+            }
+
+            switch(method){
+                case "b2_upload_file": uploadFile(exchange); return;
+                case "b2_upload_part": uploadPart(exchange, path.split("/")[2]); return;
+            }
+
+            JsonFields request = readRequest(exchange);
+            switch(method){
+                case "b2_authorize_account":
+                    respond(exchange, 200, new JsonWriter().beginObject()
+                            .name("accountId").value("standin")
+                            .name("authorizationToken").value("token")
+                            .name("apiUrl").value(URL)
+                            .name("downloadUrl").value(URL)
+                            .name("recommendedPartSize").value(100 * 1000 * 1000)
+                            .name("absoluteMinimumPartSize").value(B2LargeFileUploader.MINIMUM_PART_SIZE)
+                            .endObject());
+                    break;
+                case "b2_get_upload_url":
+                    respond(exchange, 200, new JsonWriter().beginObject()
+                            .name("bucketId").value(request.getString("bucketId"))
+                            .name("uploadUrl").value(URL + "/upload/b2_upload_file")
+                            .name("authorizationToken").value("upload")
+                            .endObject());
+                    break;
+                case "b2_list_file_names": listFileNames(exchange, request); break;
+                case "b2_download_file_by_id": downloadFile(exchange, request); break;
+                case "b2_start_large_file": {
+                    LargeFile largeFile = new LargeFile(request.getString("fileName"), "4_z" + nextID.incrementAndGet());
+                    largeFiles.put(largeFile.ID, largeFile);
+                    respond(exchange, 200, new JsonWriter().beginObject()
+                            .name("fileId").value(largeFile.ID)
+                            .name("fileName").value(largeFile.name)
+                            .name("contentType").value(request.optString("contentType", "b2/x-auto"))
+                            .name("uploadTimestamp").value(System.currentTimeMillis())
+                            .endObject());
+                    break;
+                }
+                case "b2_get_upload_part_url":
+                    respond(exchange, 200, new JsonWriter().beginObject()
+                            .name("fileId").value(request.getString("fileId"))
+                            .name("uploadUrl").value(URL + "/upload/" + request.getString("fileId") + "/b2_upload_part")
+                            .name("authorizationToken").value("upload")
+                            .endObject());
+                    break;
+                case "b2_finish_large_file": {
+                    LargeFile largeFile = largeFiles.remove(request.getString("fileId"));
+                    if(largeFile == null){
+                        error(exchange, 400, "bad_request", "No such large file");
+                        break;
+                    }
+                    long length = 0;
+                    for(long part : largeFile.parts.values()) length += part;
+                    respond(exchange, 200, new JsonWriter().beginObject()
+                            .name("fileId").value(largeFile.ID)
+                            .name("fileName").value(largeFile.name)
+                            .name("contentType").value("application/octet-stream")
+                            .name("contentLength").value(length)
+                            .name("uploadTimestamp").value(System.currentTimeMillis())
+                            .endObject());
+                    break;
+                }
+                case "b2_cancel_large_file":
+                    largeFiles.remove(request.getString("fileId"));
+                    respond(exchange, 200, new JsonWriter().beginObject().name("fileId").value(request.getString("fileId")).endObject());
+                    break;
+                default:
+                    error(exchange, 400, "bad_request", "Unsupported method " + method);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            error(exchange, 500, "internal_error", String.valueOf(ex));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listFileNames(HttpExchange exchange, JsonFields request) throws IOException {
+        String start = request.optString("startFileName", "");
+        String prefix = request.optString("prefix", "");
+        int maxFileCount = (int) Math.min(MAXIMUM_FILE_COUNT, request.optLong("maxFileCount", 100));
+
+        JsonWriter response = new JsonWriter().beginObject().name("files").beginArray();
+        String nextFileName = null;
+        int count = 0;
+        for(StoredFile file : files.tailMap(start.isEmpty() ? prefix : start, true).values()){
+            if(!file.name.startsWith(prefix)) break;
+            if(count++ == maxFileCount){
+                nextFileName = file.name;
+                break;
+            }
+            //The same members as real responses, so decoding does the same work
+            response.beginObject()
+                    .name("accountId").value("standin")
+                    .name("action").value("upload")
+                    .name("bucketId").value(request.getString("bucketId"))
+                    .name("contentLength").value(file.size)
+                    .name("contentSha1").value(file.sha1)
+                    .name("contentType").value("application/octet-stream")
+                    .name("fileId").value(file.ID)
+                    .name("fileInfo").beginObject().name("src_last_modified_millis").value(Long.toString(file.uploadTimestamp)).endObject()
+                    .name("fileName").value(file.name)
+                    .name("uploadTimestamp").value(file.uploadTimestamp)
+                    .endObject();
+        }
+        respond(exchange, 200, response.endArray().name("nextFileName").value(nextFileName).endObject());
+    }
+
+    private void downloadFile(HttpExchange exchange, JsonFields request) throws IOException {
+        StoredFile file = filesByID.get(request.getString("fileId"));
+        if(file == null || file.contents == null){
+            error(exchange, 404, "not_found", "File not present");
+            return;
+        }
+
+        long start = 0, end = file.size - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if(range != null && range.startsWith("bytes=")){
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Long.parseLong(bounds[0]);
+            if(!bounds[1].isEmpty()) end = Math.min(end, Long.parseLong(bounds[1]));
+            status = 206;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("X-Bz-File-Id", file.ID);
+        exchange.getResponseHeaders().set("X-Bz-File-Name", file.name);
+        exchange.getResponseHeaders().set("X-Bz-Content-Sha1", file.sha1);
+        long length = end - start + 1;
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        try(OutputStream outputStream = exchange.getResponseBody()){
+            outputStream.write(file.contents, (int) start, (int) length);
+        }
+    }
+
+    private void uploadFile(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestHeaders().getFirst("X-Bz-File-Name");
+        String hash = exchange.getRequestHeaders().getFirst("X-Bz-Content-Sha1");
+        long[] length = new long[1];
+        hash = readUpload(exchange, hash, length);
+
+        respond(exchange, 200, new JsonWriter().beginObject()
+                .name("fileId").value("4_z" + nextID.incrementAndGet())
+                .name("fileName").value(name)
+                .name("contentType").value("application/octet-stream")
+                .name("contentLength").value(length[0])
+                .name("contentSha1").value(hash)
+                .name("uploadTimestamp").value(System.currentTimeMillis())
+                .endObject());
+    }
+
+    private void uploadPart(HttpExchange exchange, String largeFileID) throws IOException {
+        int partNumber = Integer.parseInt(exchange.getRequestHeaders().getFirst("X-Bz-Part-Number"));
+        String hash = exchange.getRequestHeaders().getFirst("X-Bz-Content-Sha1");
+        long[] length = new long[1];
+        hash = readUpload(exchange, hash, length);
+
+        LargeFile largeFile = largeFiles.get(largeFileID);
+        if(largeFile == null){
+            error(exchange, 400, "bad_request", "No such large file");
+            return;
+        }
+        largeFile.parts.put(partNumber, length[0]);
+        respond(exchange, 200, new JsonWriter().beginObject()
+                .name("fileId").value(largeFileID)
+                .name("partNumber").value(partNumber)
+                .name("contentLength").value(length[0])
+                .name("contentSha1").value(hash)
+                .endObject());
+    }
+
+    /**
+     * Reads and discards an upload, keeping only the trailing hash if it was sent after the content.
+     *
+     * @param exchange The upload request
+     * @param hash The X-Bz-Content-Sha1 header
+     * @param length Set to the length of the content, excluding any trailing hash
+     * @return The hash of the content
+     */
+    private static String readUpload(HttpExchange exchange, String hash, long[] length) throws IOException {
+        boolean hashAtEnd = HASH_AT_END.equals(hash);
+        byte[] buffer = new byte[B2Client.BUFFER_SIZE];
+        byte[] tail = new byte[SHA1_HEX_LENGTH];
+        long total = 0;
+        try(InputStream inputStream = exchange.getRequestBody()){
+            int read;
+            while((read = inputStream.read(buffer)) != -1){
+                //Keep the last 40 bytes seen, which are the hash once the body ends
+                if(hashAtEnd){
+                    if(read >= tail.length){
+                        System.arraycopy(buffer, read - tail.length, tail, 0, tail.length);
+                    }else{
+                        System.arraycopy(tail, read, tail, 0, tail.length - read);
+                        System.arraycopy(buffer, 0, tail, tail.length - read, read);
+                    }
+                }
+                total += read;
+            }
+        }
+
+        if(!hashAtEnd){
+            length[0] = total;
+            return hash;
+        }
+        length[0] = total - SHA1_HEX_LENGTH;
+        return new String(tail, StandardCharsets.US_ASCII);
+    }
+
+    private static JsonFields readRequest(HttpExchange exchange) throws IOException {
+        try(InputStream inputStream = exchange.getRequestBody()){
+            return JsonFields.read(new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[B2Client.BUFFER_SIZE];
+        while(inputStream.read(buffer) != -1);
+        inputStream.close();
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonWriter body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.size());
+        try(OutputStream outputStream = exchange.getResponseBody()){
+            body.writeTo(outputStream);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String code, String message) throws IOException {
+        respond(exchange, status, new JsonWriter().beginObject()
+                .name("status").value(status)
+                .name("code").value(code)
+                .name("message").value(message)
+                .endObject());
+    }
+
+    private static class StoredFile {
+
+        private final String name, ID, sha1;
+        private final long size, uploadTimestamp = System.currentTimeMillis();
+        private final byte[] contents;
+
+        private StoredFile(String name, String ID, long size, String sha1, byte[] contents){
+            this.name = name;
+            this.ID = ID;
+            this.size = size;
+            this.sha1 = sha1;
+            this.contents = contents;
+        }
+
+    }
+
+    private static class LargeFile {
+
+        private final String name, ID;
+        private final Map<Integer, Long> parts = new ConcurrentHashMap<Integer, Long>();
+
+        private LargeFile(String name, String ID){
+            this.name = name;
+            this.ID = ID;
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.http.URLConnectionTransport;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+import com.oliverdunk.jb2.models.BucketType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures upload and download throughput against the stand-in server over loopback, so the results show the
+ * overhead of the client rather than the network. Multiply operations per second by the size for bytes per
+ * second. Large file uploads use the smallest part size B2 allows, with parts uploaded in parallel.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class B2TransferBenchmark {
+
+    //Discards everything written to it, so only the client is measured.
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b){}
+
+        @Override
+        public void write(byte[] bytes, int offset, int length){}
+    };
+
+    @Param({"1048576", "16777216"})
+    public int size;
+
+    private B2StandInServer server;
+    private B2Client client;
+    private B2Session session;
+    private final B2Bucket bucket = new B2Bucket("benchmark", "bucket", BucketType.ALL_PRIVATE);
+    private byte[] data;
+    private ByteBuffer direct;
+    private B2File stored;
+    private File largeFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = new byte[size];
+        new Random(1).nextBytes(data);
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(data).flip();
+
+        server = new B2StandInServer();
+        stored = server.addFile("download.bin", data);
+        client = new B2Client(new URLConnectionTransport(), server.getURL());
+        session = client.authorizeAccount("account", "key");
+        //Keep ordinary downloads on a single connection, so the parallel downloader is measured separately
+        client.getParallelDownloader().setThreshold(Long.MAX_VALUE);
+
+        largeFile = File.createTempFile("jb2-large", ".bin");
+        byte[] large = new byte[(int) B2LargeFileUploader.MINIMUM_PART_SIZE * 4];
+        new Random(2).nextBytes(large);
+        Files.write(largeFile.toPath(), large);
+        client.getLargeFileUploader().setPartSize(B2LargeFileUploader.MINIMUM_PART_SIZE);
+    }
+
+    @TearDown
+    public void tearDown(){
+        server.close();
+        largeFile.delete();
+    }
+
+    @Benchmark
+    public B2File uploadBytes(){
+        return client.uploadFile(session, bucket, data, "upload.bin", null);
+    }
+
+    @Benchmark
+    public B2File uploadDirectBuffer(){
+        return client.uploadFile(session, bucket, direct, "upload.bin", null);
+    }
+
+    @Benchmark
+    public B2File uploadLargeFile(){
+        return client.getLargeFileUploader().upload(session, bucket, largeFile, "large.bin");
+    }
+
+    @Benchmark
+    public long downloadToStream(){
+        return client.downloadFile(session, stored, DISCARD);
+    }
+
+    @Benchmark
+    public int downloadToBuffer(){
+        return client.downloadFile(session, stored, ByteBuffer.allocate(size));
+    }
+
+    @Benchmark
+    public long openDownload() throws IOException {
+        long total = 0;
+        byte[] buffer = new byte[B2Client.BUFFER_SIZE];
+        try(InputStream inputStream = client.openDownload(session, stored)){
+            int read;
+            while((read = inputStream.read(buffer)) != -1) total += read;
+        }
+        return total;
+    }
+
+}
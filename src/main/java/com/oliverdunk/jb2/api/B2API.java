@@ -1,209 +1,53 @@
 package com.oliverdunk.jb2.api;
 
-import com.oliverdunk.jb2.exceptions.B2APIException;
 import com.oliverdunk.jb2.models.*;
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import javax.net.ssl.HttpsURLConnection;
-import java.io.*;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Base64;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class used for accessing the B2 API using an HTTP connection.
+ * Every method is forwarded to a shared B2Client, which can be replaced to change how requests are sent.
  */
 public class B2API {
 
-    //User-Agent field sent with all HTTP requests.
-    private static final String USER_AGENT = "JB2/1.0";
-    private static final String API_URL = "https://api.backblaze.com";
-
-    private static JSONObject call(String URL, String method, String authorization, JSONObject body) throws B2APIException {
-        try {
-            URL url = new URL(URL + "/b2api/v1/" + method);
-            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            connection.setRequestProperty("Authorization", authorization);
-
-            connection.setDoOutput(true);
-            DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
-            outputStream.writeBytes(body.toString());
-            outputStream.flush();
-            outputStream.close();
-
-            JSONObject requestResult;
-
-            if(connection.getResponseCode() < 400){
-                InputStream inputStream =  connection.getInputStream();
-                requestResult = inputToJSON(inputStream);
-            }else{
-                InputStream errorStream =  connection.getErrorStream();
-                requestResult = inputToJSON(errorStream);
-
-                B2APIException exception = new B2APIException(requestResult.getString("message"));
-                exception.setStatusCode(requestResult.getInt("status"));
-                exception.setIdentifier(requestResult.getString("code"));
-                throw exception;
-            }
-
-            connection.disconnect();
-            return requestResult;
-        } catch (IOException ex) {
-            return new JSONObject();
-        }
-    }
-
-    private static JSONObject uploadFile(File file, String name, B2UploadRequest upload) throws B2APIException {
-        try {
-            URL url = new URL(upload.getUploadURL());
-            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            connection.setRequestProperty("Authorization", upload.getAuthorizationToken());
-            connection.setRequestProperty("Content-Type", "b2/x-auto");
-            connection.setRequestProperty("X-Bz-File-Name", name);
-            connection.setRequestProperty("X-Bz-Content-Sha1", getFileHash(file));
-
-            connection.setDoOutput(true);
-            DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
-            outputStream.write(Files.readAllBytes(Paths.get(file.getPath())));
-            outputStream.flush();
-            outputStream.close();
-
-            JSONObject requestResult;
-
-            if(connection.getResponseCode() < 400){
-                InputStream inputStream =  connection.getInputStream();
-                requestResult = inputToJSON(inputStream);
-            }else{
-                InputStream errorStream =  connection.getErrorStream();
-                requestResult = inputToJSON(errorStream);
-
-                B2APIException exception = new B2APIException(requestResult.getString("message"));
-                exception.setStatusCode(requestResult.getInt("status"));
-                exception.setIdentifier(requestResult.getString("code"));
-                throw exception;
-            }
-
-            connection.disconnect();
-            return requestResult;
-        } catch (IOException | NoSuchAlgorithmException ex) {
-            return new JSONObject();
-        }
-    }
-
-    private static void downloadFile(String URL, String authorization, B2File file, File destination) throws B2APIException {
-        try {
-            URL url = new URL(URL + "/b2api/v1/b2_download_file_by_id");
-            HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            connection.setRequestProperty("Authorization", authorization);
-
-            connection.setDoOutput(true);
-            DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
-            outputStream.writeBytes(new JSONObject().put("fileId", file.getID()).toString());
-            outputStream.flush();
-            outputStream.close();
-
-            if(connection.getResponseCode() < 400){
-                InputStream inputStream =  connection.getInputStream();
-                OutputStream fileOutputStream = new FileOutputStream(destination);
-
-                int read = 0;
-                byte[] bytes = new byte[1024];
-
-                while ((read = inputStream.read(bytes)) != -1) {
-                    fileOutputStream.write(bytes, 0, read);
-                }
-                fileOutputStream.close();
-                connection.disconnect();
-            }else{
-                InputStream errorStream =  connection.getErrorStream();
-                JSONObject requestResult = inputToJSON(errorStream);
-
-                B2APIException exception = new B2APIException(requestResult.getString("message"));
-                exception.setStatusCode(requestResult.getInt("status"));
-                exception.setIdentifier(requestResult.getString("code"));
-                throw exception;
-            }
-
-        } catch (IOException ignored) {}
-    }
-
-    /**
-     * Reads the data from an InputStream and returns the string parsed into a JSONObject.
-     *
-     * @param inputStream InputStream which will be read to retrieve the data
-     * @return JSONObject representing the data inside the InputStream
-     * @throws IOException Thrown if an error occurs while reading data from the InputStream
-     */
-    private static JSONObject inputToJSON(InputStream inputStream) throws IOException {
-        StringBuilder JSON = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-
-        while(reader.ready()) JSON.append(reader.readLine());
-        return new JSONObject(JSON.toString().trim());
-    }
+    private static volatile B2Client client = new B2Client();
 
     /**
-     * Authorizes an account with the B2 API, using the b2_authorize_account method.
+     * Gets the client which all B2API methods are forwarded to.
      *
-     * @param accountID Your B2 API account ID
-     * @param applicationKey Your B2 API application key
-     * @return A B2Session instance representing the session created by this request
+     * @return The shared B2Client
      */
-    public static B2Session authorizeAccount(String accountID, String applicationKey){
-        String encodedAuth = encodeAuthorization(accountID + ":" + applicationKey);
-        JSONObject requestResult = call(API_URL, "b2_authorize_account", encodedAuth, new JSONObject());
-
-        String authorizationToken = requestResult.getString("authorizationToken");
-        String apiURL = requestResult.getString("apiUrl");
-        String downloadURL = requestResult.getString("downloadUrl");
-        return new B2Session(authorizationToken, accountID, apiURL, downloadURL);
+    public static B2Client getClient(){
+        return client;
     }
 
     /**
-     * Encodes an authentication input into Base64, and formats for the Authorization field.
-     * Used for the authorizeAccount, which does not have the usual authorization token.
+     * Replaces the client which all B2API methods are forwarded to, for example to use a different
+     * B2Transport or authorization URL.
      *
-     * @param input Account ID and application key in the format accountID:applicationKey
-     * @return Encoded Base64 String, with the Basic prefix
+     * @param client The B2Client which should be used from now on
      */
-    private static String encodeAuthorization(String input){
-        byte[] authorizationBytes = input.getBytes(StandardCharsets.UTF_8);
-        String encodedAuthorization = Base64.getEncoder().encodeToString(authorizationBytes);
-        return "Basic " + encodedAuthorization;
+    public static void setClient(B2Client client){
+        B2API.client = client;
     }
 
     /**
-     * Gets the SHA1 hash of a file.
+     * Authorizes an account with the B2 API, using the b2_authorize_account method.
      *
-     * @param file The file for which the hash should be generated
-     * @return The SHA1 hash of the specified file
+     * @param accountID Your B2 API account ID
+     * @param applicationKey Your B2 API application key
+     * @return A B2Session instance representing the session created by this request
      */
-    private static String getFileHash(File file) throws NoSuchAlgorithmException, IOException {
-        MessageDigest md = MessageDigest.getInstance("SHA1");
-        FileInputStream fis = new FileInputStream(file);
-        byte[] dataBytes = new byte[1024];
-        int nread = 0;
-
-        while ((nread = fis.read(dataBytes)) != -1) md.update(dataBytes, 0, nread);
-
-        byte[] mdBytes = md.digest();
-        StringBuffer sb = new StringBuffer("");
-        for (int i = 0; i < mdBytes.length; i++) sb.append(Integer.toString((mdBytes[i] & 0xff) + 0x100, 16).substring(1));
-
-        return sb.toString();
+    public static B2Session authorizeAccount(String accountID, String applicationKey){
+        return client.authorizeAccount(accountID, applicationKey);
     }
 
     /**
@@ -215,12 +59,7 @@ public class B2API {
      * @return String which is the ID of the bucket
      */
     public static B2Bucket createBucket(B2Session session, String bucketName, BucketType bucketType){
-        JSONObject parameters = new JSONObject();
-        parameters.put("accountId", session.getAccountID());
-        parameters.put("bucketName", bucketName);
-        parameters.put("bucketType", bucketType.getIdentifier());
-        JSONObject requestResult = call(session.getAPIURL(), "b2_create_bucket", session.getAuthToken(), parameters);
-        return new B2Bucket(bucketName, requestResult.getString("bucketId"), bucketType);
+        return client.createBucket(session, bucketName, bucketType);
     }
 
     /**
@@ -230,10 +69,7 @@ public class B2API {
      * @param bucket The B2Bucket instance which should be deleted
      */
     public static void deleteBucket(B2Session session, B2Bucket bucket){
-        JSONObject parameters = new JSONObject();
-        parameters.put("accountId", session.getAccountID());
-        parameters.put("bucketId", bucket.getID());
-        call(session.getAPIURL(), "b2_delete_bucket", session.getAuthToken(), parameters);
+        client.deleteBucket(session, bucket);
     }
 
     /**
@@ -242,20 +78,19 @@ public class B2API {
      * @param session Session authenticated with the API, which will be used as Authorization
      */
     public static List<B2Bucket> listBuckets(B2Session session){
-        JSONObject parameters = new JSONObject();
-        parameters.put("accountId", session.getAccountID());
-        JSONObject response = call(session.getAPIURL(), "b2_list_buckets", session.getAuthToken(), parameters);
+        return client.listBuckets(session);
+    }
 
-        List<B2Bucket> buckets = new ArrayList<B2Bucket>();
-        for(int i = 0; i < response.getJSONArray("buckets").length(); i++){
-            JSONObject bucket = response.getJSONArray("buckets").getJSONObject(i);
-            buckets.add(new B2Bucket(
-                    bucket.getString("bucketName"),
-                    bucket.getString("bucketId"),
-                    BucketType.getByIdentifier(bucket.getString("bucketType")))
-            );
-        }
-        return buckets;
+    /**
+     * Finds a bucket by name, using the metadata cache if one is set.
+     * Concurrent lookups of the same bucket share a single request.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucketName The name of the bucket
+     * @return The bucket, or null if the account has no bucket with the name
+     */
+    public static B2Bucket getBucket(B2Session session, String bucketName){
+        return client.getBucket(session, bucketName);
     }
 
     /**
@@ -265,11 +100,7 @@ public class B2API {
      * @param bucket The B2Bucket instance which should be synced
      */
     public static void updateBucket(B2Session session, B2Bucket bucket){
-        JSONObject parameters = new JSONObject();
-        parameters.put("accountId", session.getAccountID());
-        parameters.put("bucketId", bucket.getID());
-        parameters.put("bucketType", bucket.getType().getIdentifier());
-        call(session.getAPIURL(), "b2_update_bucket", session.getAuthToken(), parameters);
+        client.updateBucket(session, bucket);
     }
 
     /**
@@ -280,10 +111,7 @@ public class B2API {
      * @return A B2UploadRequest instance representing where a file should be uploaded
      */
     public static B2UploadRequest getUploadURL(B2Session session, B2Bucket bucket){
-        JSONObject parameters = new JSONObject();
-        parameters.put("bucketId", bucket.getID());
-        JSONObject result = call(session.getAPIURL(), "b2_get_upload_url", session.getAuthToken(), parameters);
-        return new B2UploadRequest(bucket, result.getString("uploadUrl"), result.getString("authorizationToken"));
+        return client.getUploadURL(session, bucket);
     }
 
     /**
@@ -295,19 +123,458 @@ public class B2API {
      * @return A B2File instance
      */
     public static B2File uploadFile(B2UploadRequest upload, File file, String name){
-        JSONObject result = uploadFile(file, name, upload);
-        return new B2File(name, result.getString("contentType"), result.getString("fileId"), file.length(), System.currentTimeMillis());
+        return client.uploadFile(upload, file, name);
+    }
+
+    /**
+     * Uploads the contents of an InputStream to the API completing the upload request. The data is read once,
+     * with the SHA1 hash computed while it is sent, so streams such as process output can be uploaded directly.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param inputStream Stream containing the data which should be uploaded, which is not closed
+     * @param length Number of bytes which will be read from the stream
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2UploadRequest upload, InputStream inputStream, long length, String name){
+        return client.uploadFile(upload, inputStream, length, name);
+    }
+
+    /**
+     * Uploads the contents of a ReadableByteChannel to the API completing the upload request. The data is read
+     * once, with the SHA1 hash computed while it is sent.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param channel Channel containing the data which should be uploaded, which is not closed
+     * @param length Number of bytes which will be read from the channel
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2UploadRequest upload, ReadableByteChannel channel, long length, String name){
+        return client.uploadFile(upload, channel, length, name);
+    }
+
+    /**
+     * Uploads the remaining bytes of a ByteBuffer to the API completing the upload request, for data which is
+     * already in memory or mapped from a file. The position of the buffer is not changed.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param data Buffer containing the data which should be uploaded, which may be direct or memory-mapped
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2UploadRequest upload, ByteBuffer data, String name, String sha1){
+        return client.uploadFile(upload, data, name, sha1);
+    }
+
+    /**
+     * Uploads an array of bytes to the API completing the upload request.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param data The data which should be uploaded
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2UploadRequest upload, byte[] data, String name, String sha1){
+        return client.uploadFile(upload, data, name, sha1);
+    }
+
+    /**
+     * Uploads the remaining bytes of a ByteBuffer to the API, retrying failed uploads with a new upload URL.
+     * The position of the buffer is not changed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param data Buffer containing the data which should be uploaded, which may be direct or memory-mapped
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2Session session, B2Bucket bucket, ByteBuffer data, String name, String sha1){
+        return client.uploadFile(session, bucket, data, name, sha1);
+    }
+
+    /**
+     * Uploads an array of bytes to the API, retrying failed uploads with a new upload URL.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param data The data which should be uploaded
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2Session session, B2Bucket bucket, byte[] data, String name, String sha1){
+        return client.uploadFile(session, bucket, data, name, sha1);
+    }
+
+    /**
+     * Uploads a file to the API, automatically using the large file API with several parallel connections
+     * when the file is above the threshold of the default B2LargeFileUploader.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param file The file which should be uploaded
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public static B2File uploadFile(B2Session session, B2Bucket bucket, File file, String name){
+        return client.uploadFile(session, bucket, file, name);
+    }
+
+    /**
+     * Gets the uploader used by the uploadFile method for files above its threshold, which can be used to
+     * change the threshold, part size and number of threads.
+     *
+     * @return The default B2LargeFileUploader
+     */
+    public static B2LargeFileUploader getLargeFileUploader(){
+        return client.getLargeFileUploader();
+    }
+
+    /**
+     * Starts a large file, which will be uploaded in parts using the uploadPart method.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param name The name which should identify the file
+     * @return A B2File representing the unfinished large file
+     */
+    public static B2File startLargeFile(B2Session session, B2Bucket bucket, String name){
+        return client.startLargeFile(session, bucket, name);
+    }
+
+    /**
+     * Starts a large file with the given metadata, which will be uploaded or copied in parts.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the file will be stored
+     * @param name The name which should identify the file
+     * @param contentType The MIME type of the file, or b2/x-auto to choose it from the name
+     * @param fileInfo Custom information stored with the file, or null for none
+     * @return A B2File representing the unfinished large file
+     */
+    public static B2File startLargeFile(B2Session session, B2Bucket bucket, String name, String contentType, Map<String, String> fileInfo){
+        return client.startLargeFile(session, bucket, name, contentType, fileInfo);
+    }
+
+    /**
+     * Prepares the API for uploading parts of a large file. Each thread uploading parts requires its own URL.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     * @return A B2UploadPartRequest instance representing where parts should be uploaded
+     */
+    public static B2UploadPartRequest getUploadPartURL(B2Session session, B2File largeFile){
+        return client.getUploadPartURL(session, largeFile);
+    }
+
+    /**
+     * Uploads a range of a local file as one part of a large file. The range is streamed and hashed in a
+     * single pass, so only a small fixed size buffer is held in memory regardless of the part size.
+     *
+     * @param upload An upload request created with the getUploadPartURL method
+     * @param partNumber The number of the part, starting at 1
+     * @param file The local file containing the part
+     * @param offset Position within the local file where the part starts
+     * @param length Number of bytes in the part
+     * @return The SHA1 hash of the part, which is required to finish the large file
+     */
+    public static String uploadPart(B2UploadPartRequest upload, int partNumber, File file, long offset, long length){
+        return client.uploadPart(upload, partNumber, file, offset, length);
+    }
+
+    /**
+     * Finishes a large file once all of its parts have been uploaded.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     * @param partHashes The SHA1 hashes of every part, in order of part number
+     * @return A B2File instance representing the completed file
+     */
+    public static B2File finishLargeFile(B2Session session, B2File largeFile, List<String> partHashes){
+        return client.finishLargeFile(session, largeFile, partHashes);
     }
 
     /**
-     * Downloads a file from the API.
+     * Lists the parts of an unfinished large file which have been uploaded so far.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     * @return The uploaded parts, in order of part number
+     */
+    public static List<B2Part> listParts(B2Session session, B2File largeFile){
+        return client.listParts(session, largeFile);
+    }
+
+    /**
+     * Cancels an unfinished large file, deleting any parts which have already been uploaded.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     */
+    public static void cancelLargeFile(B2Session session, B2File largeFile){
+        client.cancelLargeFile(session, largeFile);
+    }
+
+    /**
+     * Copies a file within B2, without its contents passing through this client. The copy is stored in the
+     * same bucket with the same metadata.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param source The file which should be copied
+     * @param name The name of the copy
+     * @return A B2File representing the copy
+     */
+    public static B2File copyFile(B2Session session, B2File source, String name){
+        return client.copyFile(session, source, name);
+    }
+
+    /**
+     * Copies a file, or a range of it, within B2, without its contents passing through this client.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param source The file which should be copied
+     * @param bucket The B2Bucket the copy should be stored in, or null for the bucket of the source
+     * @param name The name of the copy
+     * @param offset Position within the source of the first byte to copy
+     * @param length Number of bytes to copy, or -1 for the rest of the file
+     * @param contentType The MIME type of the copy, or null to keep the metadata of the source
+     * @param fileInfo Custom information stored with the copy in place of that of the source
+     * @return A B2File representing the copy
+     */
+    public static B2File copyFile(B2Session session, B2File source, B2Bucket bucket, String name, long offset, long length,
+                                  String contentType, Map<String, String> fileInfo){
+        return client.copyFile(session, source, bucket, name, offset, length, contentType, fileInfo);
+    }
+
+    /**
+     * Copies a range of an existing file as one part of a large file.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param source The file which the part should be copied from
+     * @param largeFile A large file started with the startLargeFile method
+     * @param partNumber The number of the part, starting at 1
+     * @param offset Position within the source of the first byte of the part
+     * @param length Number of bytes in the part
+     * @return The SHA1 hash of the part, which is required to finish the large file
+     */
+    public static String copyPart(B2Session session, B2File source, B2File largeFile, int partNumber, long offset, long length){
+        return client.copyPart(session, source, largeFile, partNumber, offset, length);
+    }
+
+    /**
+     * Downloads a file from the API, automatically fetching ranges of the file over several parallel connections
+     * when the file is above the threshold of the default B2ParallelDownloader.
      *
      * @param session Session authenticated with the API, which will be used as Authorization
      * @param file The file which should be downloaded
      * @param destination Where the file should be downloaded to
      */
     public static void downloadFile(B2Session session, B2File file, File destination){
-        downloadFile(session.getDownloadURL(), session.getAuthToken(), file, destination);
+        client.downloadFile(session, file, destination);
+    }
+
+    /**
+     * Downloads a file from the API, streaming it into an OutputStream. A dropped connection is continued from
+     * where it stopped, so nothing is written twice, and the SHA1 hash is checked once the file is complete.
+     * The stream is not closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param outputStream Where the file should be written to
+     * @return Number of bytes written
+     */
+    public static long downloadFile(B2Session session, B2File file, OutputStream outputStream){
+        return client.downloadFile(session, file, outputStream);
+    }
+
+    /**
+     * Downloads a file from the API, streaming it into a channel. When the channel is a FileChannel, the
+     * file is transferred into it directly from the response. The channel is not closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param channel Where the file should be written to, starting at its current position
+     * @return Number of bytes written
+     */
+    public static long downloadFile(B2Session session, B2File file, WritableByteChannel channel){
+        return client.downloadFile(session, file, channel);
+    }
+
+    /**
+     * Downloads a small file from the API into a buffer, starting at the position of the buffer and leaving
+     * the position after the last byte.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param buffer Buffer with enough space remaining for the whole file
+     * @return Number of bytes written into the buffer
+     */
+    public static int downloadFile(B2Session session, B2File file, ByteBuffer buffer){
+        return client.downloadFile(session, file, buffer);
+    }
+
+    /**
+     * Opens a stream of the contents of a file, for passing a file on without storing it. The stream holds
+     * a transfer permit until it is closed, so must always be closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @return An InputStream of the contents of the file
+     */
+    public static InputStream openDownload(B2Session session, B2File file){
+        return client.openDownload(session, file);
+    }
+
+    /**
+     * Continues a download into a destination which already holds the start of the file, such as one left
+     * behind by a process which stopped part way through. The SHA1 hash of the whole result is checked.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param destination Where the file should be downloaded to, which is created if it does not exist
+     */
+    public static void resumeDownload(B2Session session, B2File file, File destination){
+        client.resumeDownload(session, file, destination);
+    }
+
+    /**
+     * Gets the downloader used by the downloadFile method for files above its threshold, which can be used to
+     * change the threshold, range size and number of threads.
+     *
+     * @return The default B2ParallelDownloader
+     */
+    public static B2ParallelDownloader getParallelDownloader(){
+        return client.getParallelDownloader();
+    }
+
+    /**
+     * Sets the policy which decides which failed requests are retried, and how long to wait between attempts.
+     *
+     * @param retryPolicy The new policy, or B2RetryPolicy.NONE to send every request once
+     */
+    public static void setRetryPolicy(B2RetryPolicy retryPolicy){
+        client.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * Gets the policy which decides which failed requests are retried.
+     *
+     * @return The current B2RetryPolicy
+     */
+    public static B2RetryPolicy getRetryPolicy(){
+        return client.getRetryPolicy();
+    }
+
+    /**
+     * Sets the limiter which adapts how many uploads and downloads this client runs at once. Every file upload,
+     * large file part and download range waits for a permit, whichever thread or uploader it comes from.
+     *
+     * @param transferLimiter The new limiter
+     */
+    public static void setTransferLimiter(B2ConcurrencyLimiter transferLimiter){
+        client.setTransferLimiter(transferLimiter);
+    }
+
+    /**
+     * Gets the limiter which adapts how many uploads and downloads this client runs at once, which can be used
+     * to check the current limit and the number of transfers waiting.
+     *
+     * @return The current B2ConcurrencyLimiter
+     */
+    public static B2ConcurrencyLimiter getTransferLimiter(){
+        return client.getTransferLimiter();
+    }
+
+    /**
+     * Sets the cache used by getFile, getFileByName and getBucket. Entries are removed when this client
+     * deletes or changes the file or bucket, but changes made by other clients are only seen once entries expire.
+     *
+     * @param metadataCache The cache, or null to send a request for every lookup
+     */
+    public static void setMetadataCache(B2MetadataCache metadataCache){
+        client.setMetadataCache(metadataCache);
+    }
+
+    /**
+     * Gets the cache used by getFile, getFileByName and getBucket, which can be used to check hit and miss counts.
+     *
+     * @return The current B2MetadataCache, or null if caching is disabled
+     */
+    public static B2MetadataCache getMetadataCache(){
+        return client.getMetadataCache();
+    }
+
+    /**
+     * Sets the instrumentation which every API call, upload and download is reported to once it finishes.
+     *
+     * @param instrumentation The instrumentation, such as a B2MetricsRecorder, or B2Instrumentation.NONE
+     */
+    public static void setInstrumentation(B2Instrumentation instrumentation){
+        client.setInstrumentation(instrumentation);
+    }
+
+    /**
+     * Gets the instrumentation which calls are reported to.
+     *
+     * @return The instrumentation, which is B2Instrumentation.NONE by default
+     */
+    public static B2Instrumentation getInstrumentation(){
+        return client.getInstrumentation();
+    }
+
+    /**
+     * Sets the scheduler which limits the bandwidth of every upload and download.
+     *
+     * @param bandwidthScheduler The scheduler, or null to transfer as fast as the connection allows
+     */
+    public static void setBandwidthScheduler(B2BandwidthScheduler bandwidthScheduler){
+        client.setBandwidthScheduler(bandwidthScheduler);
+    }
+
+    /**
+     * Gets the scheduler which limits the bandwidth of uploads and downloads.
+     *
+     * @return The current B2BandwidthScheduler, or null if bandwidth is not limited
+     */
+    public static B2BandwidthScheduler getBandwidthScheduler(){
+        return client.getBandwidthScheduler();
+    }
+
+    /**
+     * Sets the priority class which uploads and downloads share bandwidth as.
+     *
+     * @param transferPriority The priority class, which is NORMAL by default
+     */
+    public static void setTransferPriority(B2TransferPriority transferPriority){
+        client.setTransferPriority(transferPriority);
+    }
+
+    /**
+     * Gets the priority class which uploads and downloads share bandwidth as.
+     *
+     * @return The current B2TransferPriority
+     */
+    public static B2TransferPriority getTransferPriority(){
+        return client.getTransferPriority();
+    }
+
+    /**
+     * Downloads a range of a file from the API, writing it directly into a FileChannel at the same position
+     * as it has within the file. Positional writes are used, so several ranges can be written at once.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param offset Position within the file of the first byte to download
+     * @param length Number of bytes which should be downloaded
+     * @param channel Channel which the range will be written to
+     * @return The SHA1 hash of the whole file reported by the server, or null if the server does not know it
+     */
+    public static String downloadRange(B2Session session, B2File file, long offset, long length, FileChannel channel){
+        return client.downloadRange(session, file, offset, length, channel);
     }
 
     /**
@@ -317,25 +584,32 @@ public class B2API {
      * @param file The B2File instance which should be deleted
      */
     public static void deleteFile(B2Session session, B2File file){
-        JSONObject parameters = new JSONObject();
-        parameters.put("fileName", file.getName());
-        parameters.put("fileId", file.getID());
-        call(session.getAPIURL(), "b2_delete_file_version", session.getAuthToken(), parameters);
+        client.deleteFile(session, file);
     }
 
     /**
-     * Fetches a file and instantiates a new B2File.
+     * Fetches a file and instantiates a new B2File, using the metadata cache if one is set.
+     * Concurrent lookups of the same file share a single request.
      *
      * @param session Session authenticated with the API, which will be used as Authorization
      * @param fileID The ID of the file which should be fetched
-     * @return A B2File (timestamp currently not supported)
+     * @return A B2File instance
      */
     public static B2File getFile(B2Session session, String fileID){
-        JSONObject parameters = new JSONObject();
-        parameters.put("fileId", fileID);
-        JSONObject result = call(session.getAPIURL(), "b2_get_file_info", session.getAuthToken(), parameters);
-        //TODO: Get correct upload timestamp
-        return new B2File(result.getString("fileName"), result.getString("contentType"), result.getString("fileId"), result.getLong("contentLength"), 0);
+        return client.getFile(session, fileID);
+    }
+
+    /**
+     * Finds the latest version of a file by name, using the metadata cache if one is set.
+     * Concurrent lookups of the same name share a single request.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     * @param name The name of the file
+     * @return The file, or null if the bucket has no file with the name
+     */
+    public static B2File getFileByName(B2Session session, B2Bucket bucket, String name){
+        return client.getFileByName(session, bucket, name);
     }
 
     /**
@@ -345,37 +619,42 @@ public class B2API {
      * @param bucket Bucket which should be searched
      */
     public static List<B2File> listFiles(B2Session session, B2Bucket bucket){
-        JSONObject parameters = new JSONObject();
-        parameters.put("bucketId", bucket.getID());
-        JSONObject response = call(session.getAPIURL(), "b2_list_file_names", session.getAuthToken(), parameters);
-
-        //Add initial files
-        List<B2File> files = new ArrayList<B2File>();
-        addFiles(files, response.getJSONArray("files"));
-
-        //Add any files which require additional requests
-        while(response.has("nextFileName") && response.get("nextFileName").toString() == null){
-            System.out.println(response.get("nextFileName").toString());
-            parameters.put("startFileName", response.get("nextFileName"));
-            response = call(session.getAPIURL(), "b2_list_file_names", session.getAuthToken(), parameters);
-            addFiles(files, response.getJSONArray("files"));
-        }
-        return files;
-    }
-
-    private static void addFiles(List<B2File> currentList, JSONArray files){
-        for(int i = 0; i < files.length(); i++){
-            JSONObject file = files.getJSONObject(i);
-            currentList.add(new B2File(
-                            file.getString("fileName"),
-                            //TODO: Send correct file type
-                            "Unknown",
-                            file.getString("fileId"),
-                            file.getLong("size"),
-                            file.getLong("uploadTimestamp")
-                    )
-            );
-        }
-    }
-
-}
\ No newline at end of file
+        return client.listFiles(session, bucket);
+    }
+
+    /**
+     * Lists one page of file names using the API. Most callers should use a B2FileLister instead, which
+     * fetches further pages as they are needed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     * @param startFileName The first file name to return, or null to start at the beginning of the bucket
+     * @param maxFileCount Largest number of files to return, up to 10000
+     * @param prefix Only return files whose names start with this prefix, or null for all files
+     * @param delimiter Return names up to and including this delimiter as folders, or null for a flat listing
+     * @return A B2FilePage containing the files and the name which the next page starts at
+     */
+    public static B2FilePage listFileNames(B2Session session, B2Bucket bucket, String startFileName, int maxFileCount,
+                                           String prefix, String delimiter){
+        return client.listFileNames(session, bucket, startFileName, maxFileCount, prefix, delimiter);
+    }
+
+    /**
+     * Lists one page of file versions using the API, newest first for each name. Most callers should use a
+     * B2FileLister with setAllVersions instead, which fetches further pages as they are needed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     * @param startFileName The first file name to return, or null to start at the beginning of the bucket
+     * @param startFileID The first version of startFileName to return, or null for its newest version
+     * @param maxFileCount Largest number of versions to return, up to 10000
+     * @param prefix Only return files whose names start with this prefix, or null for all files
+     * @param delimiter Return names up to and including this delimiter as folders, or null for a flat listing
+     * @return A B2FilePage containing the versions and the name and ID which the next page starts at
+     */
+    public static B2FilePage listFileVersions(B2Session session, B2Bucket bucket, String startFileName, String startFileID,
+                                              int maxFileCount, String prefix, String delimiter){
+        return client.listFileVersions(session, bucket, startFileName, startFileID, maxFileCount, prefix, delimiter);
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.models.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous version of every B2Client operation, returning a CompletableFuture instead of blocking the
+ * calling thread. Operations run on a configurable executor, and at most a fixed number run at once; any
+ * others wait in a queue without holding a thread. Using an executor of virtual threads on Java 21 or newer
+ * allows thousands of operations to be in flight on a handful of platform threads.
+ */
+public class B2AsyncClient {
+
+    private final B2Client client;
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final AtomicInteger running = new AtomicInteger();
+    private final Queue<Task<?>> pending = new ConcurrentLinkedQueue<Task<?>>();
+
+    /**
+     * Constructs a B2AsyncClient which runs up to 64 operations at once on the default executor.
+     *
+     * @param client The B2Client used to perform each operation
+     */
+    public B2AsyncClient(B2Client client){
+        this(client, newDefaultExecutor(), 64);
+    }
+
+    /**
+     * Constructs a B2AsyncClient which runs operations on the given executor.
+     *
+     * @param client The B2Client used to perform each operation
+     * @param executor Executor which each operation will run on
+     * @param maxConcurrency Largest number of operations which may run at the same time
+     */
+    public B2AsyncClient(B2Client client, Executor executor, int maxConcurrency){
+        if(maxConcurrency < 1) throw new IllegalArgumentException("Concurrency limit must be at least one");
+        this.client = client;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Creates the executor used when none is given. This uses a virtual thread for each operation when
+     * running on Java 21 or newer, and otherwise a cached pool of daemon threads.
+     *
+     * @return An executor suitable for running blocking B2 operations
+     */
+    public static ExecutorService newDefaultExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable){
+                    Thread thread = new Thread(runnable, "JB2-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Asynchronous version of B2Client.createBucket.
+     */
+    public CompletableFuture<B2Bucket> createBucket(B2Session session, String bucketName, BucketType bucketType){
+        return submit(() -> client.createBucket(session, bucketName, bucketType));
+    }
+
+    /**
+     * Asynchronous version of B2Client.deleteBucket.
+     */
+    public CompletableFuture<Void> deleteBucket(B2Session session, B2Bucket bucket){
+        return submit(() -> { client.deleteBucket(session, bucket); return null; });
+    }
+
+    /**
+     * Asynchronous version of B2Client.listBuckets.
+     */
+    public CompletableFuture<List<B2Bucket>> listBuckets(B2Session session){
+        return submit(() -> client.listBuckets(session));
+    }
+
+    /**
+     * Asynchronous version of B2Client.updateBucket.
+     */
+    public CompletableFuture<Void> updateBucket(B2Session session, B2Bucket bucket){
+        return submit(() -> { client.updateBucket(session, bucket); return null; });
+    }
+
+    /**
+     * Asynchronous version of B2Client.getUploadURL.
+     */
+    public CompletableFuture<B2UploadRequest> getUploadURL(B2Session session, B2Bucket bucket){
+        return submit(() -> client.getUploadURL(session, bucket));
+    }
+
+    /**
+     * Asynchronous version of B2Client.uploadFile, using an upload request.
+     */
+    public CompletableFuture<B2File> uploadFile(B2UploadRequest upload, File file, String name){
+        return submit(() -> client.uploadFile(upload, file, name));
+    }
+
+    /**
+     * Asynchronous version of B2Client.uploadFile, reading from an InputStream. The stream must not be used
+     * by the caller until the returned future has completed.
+     */
+    public CompletableFuture<B2File> uploadFile(B2UploadRequest upload, InputStream inputStream, long length, String name){
+        return submit(() -> client.uploadFile(upload, inputStream, length, name));
+    }
+
+    /**
+     * Asynchronous version of B2Client.uploadFile, fetching an upload URL and using the large file API
+     * when the file is above the threshold.
+     */
+    public CompletableFuture<B2File> uploadFile(B2Session session, B2Bucket bucket, File file, String name){
+        return submit(() -> client.uploadFile(session, bucket, file, name));
+    }
+
+    /**
+     * Asynchronous version of B2Client.downloadFile.
+     */
+    public CompletableFuture<Void> downloadFile(B2Session session, B2File file, File destination){
+        return submit(() -> { client.downloadFile(session, file, destination); return null; });
+    }
+
+    /**
+     * Asynchronous version of B2Client.deleteFile.
+     */
+    public CompletableFuture<Void> deleteFile(B2Session session, B2File file){
+        return submit(() -> { client.deleteFile(session, file); return null; });
+    }
+
+    /**
+     * Asynchronous version of B2Client.getFile.
+     */
+    public CompletableFuture<B2File> getFile(B2Session session, String fileID){
+        return submit(() -> client.getFile(session, fileID));
+    }
+
+    /**
+     * Asynchronous version of B2Client.listFiles.
+     */
+    public CompletableFuture<List<B2File>> listFiles(B2Session session, B2Bucket bucket){
+        return submit(() -> client.listFiles(session, bucket));
+    }
+
+    /**
+     * Queues an operation, which will be started once fewer than maxConcurrency operations are running.
+     *
+     * @param operation The blocking operation which should be run
+     * @return A future which is completed with the result of the operation
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> operation){
+        Task<T> task = new Task<T>(operation);
+        pending.offer(task);
+        dispatch();
+        return task.future;
+    }
+
+    /**
+     * Starts queued operations until either the queue is empty or the concurrency limit is reached.
+     * Called whenever an operation is queued or finishes, so no thread ever waits for a permit.
+     */
+    private void dispatch(){
+        while(!pending.isEmpty()){
+            int current = running.get();
+            if(current >= maxConcurrency) return;
+            if(!running.compareAndSet(current, current + 1)) continue;
+
+            final Task<?> task = pending.poll();
+            if(task == null){
+                running.decrementAndGet();
+                continue;
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.decrementAndGet();
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                running.decrementAndGet();
+                task.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of operations which are currently running.
+     *
+     * @return Number of operations which have started but not finished
+     */
+    public int getActiveCount(){
+        return running.get();
+    }
+
+    /**
+     * Gets the number of operations waiting for one of the running operations to finish.
+     *
+     * @return Number of queued operations
+     */
+    public int getQueueDepth(){
+        return pending.size();
+    }
+
+    /**
+     * Gets the largest number of operations which may run at the same time.
+     *
+     * @return The concurrency limit
+     */
+    public int getMaxConcurrency(){
+        return maxConcurrency;
+    }
+
+    /**
+     * Gets the client used to perform each operation.
+     *
+     * @return The underlying B2Client
+     */
+    public B2Client getClient(){
+        return client;
+    }
+
+    private static class Task<T> {
+
+        private final Supplier<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        private Task(Supplier<T> operation){
+            this.operation = operation;
+        }
+
+        private void run(){
+            if(future.isDone()) return;
+            try {
+                future.complete(operation.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,397 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.http.B2Connection;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the bandwidth used by uploads and downloads, with token buckets for the total and for each direction.
+ * Transfers wait for bandwidth in start-time fair queuing order, so while several priority classes are waiting
+ * each class receives bandwidth in proportion to its weight, and a class which has been idle does not build up
+ * credit. One scheduler can be shared by several clients, for example one for restores and one for backups,
+ * so they share a single link. Limits can be changed at any time, such as to use the whole link off-hours.
+ */
+public class B2BandwidthScheduler {
+
+    /**
+     * The direction of a transfer, which each have their own limit.
+     */
+    public enum Direction {
+        UPLOAD, DOWNLOAD
+    }
+
+    //Tokens which can build up while bandwidth is unused, as a fraction of a second at the limit.
+    private static final double BURST_SECONDS = 0.1;
+
+    private final Bucket total = new Bucket(), upload = new Bucket(), download = new Bucket();
+    private final Map<B2TransferPriority, Integer> weights = new EnumMap<B2TransferPriority, Integer>(B2TransferPriority.class);
+    //Virtual time at which the last request of each class finishes, in bytes divided by weight.
+    private final Map<B2TransferPriority, Double> lastFinish = new EnumMap<B2TransferPriority, Double>(B2TransferPriority.class);
+    private double virtualTime;
+    private long sequence;
+    //Requests waiting for bandwidth, in the order they should be granted, guarded by this scheduler.
+    private final TreeSet<Request> waiting = new TreeSet<Request>();
+    private final Map<B2TransferPriority, LongAdder> bytes = new EnumMap<B2TransferPriority, LongAdder>(B2TransferPriority.class);
+    private final Map<B2TransferPriority, LongAdder> queueWait = new EnumMap<B2TransferPriority, LongAdder>(B2TransferPriority.class);
+
+    /**
+     * Constructs a B2BandwidthScheduler without any limits, with the default weight for every class.
+     */
+    public B2BandwidthScheduler(){
+        for(B2TransferPriority priority : B2TransferPriority.values()){
+            weights.put(priority, priority.getDefaultWeight());
+            lastFinish.put(priority, 0.0);
+            bytes.put(priority, new LongAdder());
+            queueWait.put(priority, new LongAdder());
+        }
+    }
+
+    /**
+     * Waits until a number of bytes may be sent or received. Bandwidth may be borrowed from the future, so
+     * a request is granted as soon as its buckets are not empty, and later requests wait for the debt.
+     *
+     * @param direction The direction of the transfer
+     * @param priority The priority class of the transfer
+     * @param count Number of bytes which are about to be sent or received
+     * @return Nanoseconds spent waiting
+     * @throws B2APIException Thrown if the thread is interrupted while waiting
+     */
+    public long acquire(Direction direction, B2TransferPriority priority, long count){
+        long start = System.nanoTime();
+        Bucket bucket = direction == Direction.UPLOAD ? upload : download;
+
+        synchronized(this){
+            if(total.rate > 0 || bucket.rate > 0){
+                double startTag = Math.max(virtualTime, lastFinish.get(priority));
+                lastFinish.put(priority, startTag + (double) count / weights.get(priority));
+                Request request = new Request(startTag, sequence++, bucket);
+                waiting.add(request);
+
+                try {
+                    while(true){
+                        long now = System.nanoTime();
+                        total.refill(now);
+                        upload.refill(now);
+                        download.refill(now);
+                        if(getNext() == request) break;
+
+                        long delay = Math.max(total.getDelay(), bucket.getDelay());
+                        if(delay > 0) TimeUnit.NANOSECONDS.timedWait(this, delay);
+                        else wait();
+                    }
+                } catch (InterruptedException ex) {
+                    waiting.remove(request);
+                    notifyAll();
+                    Thread.currentThread().interrupt();
+                    throw new B2APIException("Interrupted while waiting for bandwidth", ex);
+                }
+
+                waiting.remove(request);
+                virtualTime = startTag;
+                total.take(count);
+                bucket.take(count);
+                //The next request may now be allowed, or may have a new delay to wait for
+                notifyAll();
+            }
+        }
+
+        long waited = System.nanoTime() - start;
+        bytes.get(priority).add(count);
+        queueWait.get(priority).add(waited);
+        return waited;
+    }
+
+    /**
+     * Gets the request which should be granted next, which is the first in fair queuing order whose direction
+     * has bandwidth available, so a full direction does not hold up the other.
+     */
+    private Request getNext(){
+        if(!total.hasTokens()) return null;
+        for(Request request : waiting){
+            if(request.bucket.hasTokens()) return request;
+        }
+        return null;
+    }
+
+    /**
+     * Wraps a connection so that its request and response bodies are limited by this scheduler.
+     *
+     * @param connection The connection of an upload or download
+     * @param priority The priority class of the transfer
+     * @param trace The trace which time spent waiting counts towards, or null
+     * @param permit The transfer permit whose latency should leave out time spent waiting, or null
+     * @return The wrapped connection
+     */
+    B2Connection wrap(B2Connection connection, B2TransferPriority priority, B2Trace trace,
+                      B2ConcurrencyLimiter.Permit permit){
+        return new ScheduledConnection(connection, priority, trace, permit);
+    }
+
+    /**
+     * Sets the limit on uploads and downloads together.
+     *
+     * @param bytesPerSecond The limit, or 0 for no limit
+     */
+    public synchronized void setTotalLimit(long bytesPerSecond){
+        total.setRate(bytesPerSecond);
+        notifyAll();
+    }
+
+    /**
+     * Sets the limit on uploads.
+     *
+     * @param bytesPerSecond The limit, or 0 for no limit
+     */
+    public synchronized void setUploadLimit(long bytesPerSecond){
+        upload.setRate(bytesPerSecond);
+        notifyAll();
+    }
+
+    /**
+     * Sets the limit on downloads.
+     *
+     * @param bytesPerSecond The limit, or 0 for no limit
+     */
+    public synchronized void setDownloadLimit(long bytesPerSecond){
+        download.setRate(bytesPerSecond);
+        notifyAll();
+    }
+
+    /**
+     * Gets the limit on uploads and downloads together.
+     *
+     * @return The limit in bytes per second, or 0 if there is no limit
+     */
+    public synchronized long getTotalLimit(){
+        return total.rate;
+    }
+
+    /**
+     * Gets the limit on uploads.
+     *
+     * @return The limit in bytes per second, or 0 if there is no limit
+     */
+    public synchronized long getUploadLimit(){
+        return upload.rate;
+    }
+
+    /**
+     * Gets the limit on downloads.
+     *
+     * @return The limit in bytes per second, or 0 if there is no limit
+     */
+    public synchronized long getDownloadLimit(){
+        return download.rate;
+    }
+
+    /**
+     * Sets the share of bandwidth given to a priority class while other classes are also waiting.
+     *
+     * @param priority The priority class
+     * @param weight The weight, which must be at least one
+     */
+    public synchronized void setWeight(B2TransferPriority priority, int weight){
+        if(weight < 1) throw new IllegalArgumentException("Weight must be at least one");
+        weights.put(priority, weight);
+    }
+
+    /**
+     * Gets the share of bandwidth given to a priority class while other classes are also waiting.
+     *
+     * @param priority The priority class
+     * @return The weight
+     */
+    public synchronized int getWeight(B2TransferPriority priority){
+        return weights.get(priority);
+    }
+
+    /**
+     * Gets the number of bytes which have been transferred by a priority class.
+     *
+     * @param priority The priority class
+     * @return Number of bytes
+     */
+    public long getBytes(B2TransferPriority priority){
+        return bytes.get(priority).sum();
+    }
+
+    /**
+     * Gets the total time which transfers of a priority class have spent waiting for bandwidth.
+     *
+     * @param priority The priority class
+     * @return Time in nanoseconds
+     */
+    public long getQueueWait(B2TransferPriority priority){
+        return queueWait.get(priority).sum();
+    }
+
+    /**
+     * Token bucket for one limit, guarded by the scheduler. The tokens may go below zero, which is paid back
+     * before any more requests are granted.
+     */
+    private static class Bucket {
+
+        private long rate;
+        private double tokens;
+        private long updated = System.nanoTime();
+
+        private void setRate(long rate){
+            if(rate < 0) throw new IllegalArgumentException("Limit cannot be negative");
+            this.rate = rate;
+            tokens = Math.min(tokens, getCapacity());
+        }
+
+        private double getCapacity(){
+            return Math.max(B2Client.BUFFER_SIZE, rate * BURST_SECONDS);
+        }
+
+        private void refill(long now){
+            if(rate > 0) tokens = Math.min(getCapacity(), tokens + (now - updated) * rate / 1e9);
+            updated = now;
+        }
+
+        private boolean hasTokens(){
+            return rate == 0 || tokens > 0;
+        }
+
+        private void take(long count){
+            if(rate > 0) tokens -= count;
+        }
+
+        /**
+         * Gets the time until the bucket has tokens again.
+         *
+         * @return Nanoseconds, or 0 if it has tokens now
+         */
+        private long getDelay(){
+            if(hasTokens()) return 0;
+            return (long) Math.ceil(-tokens * 1e9 / rate) + 1;
+        }
+
+    }
+
+    private static class Request implements Comparable<Request> {
+
+        private final double startTag;
+        private final long sequence;
+        private final Bucket bucket;
+
+        private Request(double startTag, long sequence, Bucket bucket){
+            this.startTag = startTag;
+            this.sequence = sequence;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public int compareTo(Request other){
+            int order = Double.compare(startTag, other.startTag);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+    private class ScheduledConnection implements B2Connection {
+
+        private final B2Connection connection;
+        private final B2TransferPriority priority;
+        private final B2Trace trace;
+        private final B2ConcurrencyLimiter.Permit permit;
+
+        private ScheduledConnection(B2Connection connection, B2TransferPriority priority, B2Trace trace,
+                                    B2ConcurrencyLimiter.Permit permit){
+            this.connection = connection;
+            this.priority = priority;
+            this.trace = trace;
+            this.permit = permit;
+        }
+
+        private void acquire(Direction direction, long count){
+            long waited = B2BandwidthScheduler.this.acquire(direction, priority, count);
+            if(trace != null) trace.waited(waited);
+            //Time held back by the scheduler is not B2 being slow, so must not shrink the concurrency limit
+            if(permit != null) permit.exclude(waited);
+        }
+
+        @Override
+        public void setHeader(String name, String value){
+            connection.setHeader(name, value);
+        }
+
+        @Override
+        public OutputStream getOutputStream(long length) throws IOException {
+            return new FilterOutputStream(connection.getOutputStream(length)){
+                @Override
+                public void write(int b) throws IOException {
+                    acquire(Direction.UPLOAD, 1);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    //Large writes are split, so they cannot take a long burst of bandwidth in one go
+                    while(length > 0){
+                        int count = Math.min(length, B2Client.BUFFER_SIZE);
+                        acquire(Direction.UPLOAD, count);
+                        out.write(bytes, offset, count);
+                        offset += count;
+                        length -= count;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return connection.getStatusCode();
+        }
+
+        @Override
+        public String getHeader(String name) throws IOException {
+            return connection.getHeader(name);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(connection.getInputStream()){
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if(b != -1) acquire(Direction.DOWNLOAD, 1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    //Bytes are paid for once they arrive, which holds back the next read
+                    int count = in.read(bytes, offset, length);
+                    if(count > 0) acquire(Direction.DOWNLOAD, count);
+                    return count;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long count = in.skip(n);
+                    if(count > 0) acquire(Direction.DOWNLOAD, count);
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public void close(){
+            connection.close();
+        }
+
+    }
+
+}
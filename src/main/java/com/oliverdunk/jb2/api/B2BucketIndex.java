@@ -0,0 +1,694 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2FilePage;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact in-memory index of the latest version of every file in a bucket, for answering whether a name exists
+ * or which files share a prefix without listing the bucket each time. Names are kept sorted in UTF-8 byte order,
+ * as B2 lists them, and front coded in blocks of 16: each name only stores the bytes which differ from the one
+ * before it, and file IDs are stored the same way. Sizes, upload timestamps and content types are kept in
+ * primitive arrays, so a file takes tens of bytes rather than the hundreds taken by a B2File.
+ * <p>
+ * The index is refreshed from b2_list_file_names, either all at once or a window of names at a time starting at
+ * a cursor, so a large bucket can be kept up to date with a few requests at a time. Each refresh replaces the
+ * whole window, so files which were deleted or hidden in it are removed. Lookups never wait for a refresh, and
+ * see the index as it was before or after it. The index can be saved to a file, which load reads in a few bulk
+ * copies for a quick start before the next refresh.
+ */
+public class B2BucketIndex {
+
+    //First bytes of an index file, "JB2X".
+    private static final int MAGIC = 0x4a423258;
+    private static final int VERSION = 1;
+    //Number of names in each block. Only the first name of a block is stored in full, so is searched directly.
+    private static final int BLOCK_SIZE = 16;
+
+    private final B2Client client;
+    private final B2Bucket bucket;
+    private volatile Entries entries = new Builder().build();
+    //Name which the next refresh starts at, or null for the start of the bucket, guarded by this index.
+    private String cursor;
+    private int pageSize = B2FileLister.MAXIMUM_FILE_COUNT;
+
+    /**
+     * Constructs an empty B2BucketIndex, which is filled by refreshing it.
+     *
+     * @param client The B2Client used to list the bucket
+     * @param bucket The bucket which is indexed
+     */
+    public B2BucketIndex(B2Client client, B2Bucket bucket){
+        this.client = client;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Loads an index from a file saved by save, reading it in one go. The index is only a cache, so a missing or
+     * unreadable file, or one saved for a different bucket, gives an empty index. Files changed since the index
+     * was saved are only seen once they are refreshed.
+     *
+     * @param client The B2Client used to list the bucket
+     * @param bucket The bucket which is indexed
+     * @param file The file which the index was saved to
+     * @return The loaded index
+     */
+    public static B2BucketIndex load(B2Client client, B2Bucket bucket, File file){
+        B2BucketIndex index = new B2BucketIndex(client, bucket);
+        if(!file.isFile()) return index;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            //Read rather than mapped, since a mapping stays open until it is garbage collected, which stops a later
+            //save from replacing the file on Windows
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) return index;
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining() && channel.read(buffer) != -1);
+            buffer.flip();
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return index;
+            if(!bucket.getID().equals(readString(buffer))) return index;
+            String cursor = readString(buffer);
+
+            //Every length is checked before anything is allocated, so a damaged file cannot cause a huge allocation
+            int count = buffer.getInt();
+            int contentTypeCount = buffer.getInt();
+            if(count < 0 || contentTypeCount < 0 || contentTypeCount > buffer.remaining() / 4) return index;
+            String[] contentTypes = new String[contentTypeCount];
+            for(int i = 0; i < contentTypes.length; i++) contentTypes[i] = readString(buffer);
+            int dataLength = buffer.getInt();
+            long blocks = (count + BLOCK_SIZE - 1L) / BLOCK_SIZE;
+            if(dataLength < 0 || buffer.remaining() != blocks * 4 + dataLength + count * 20L) return index;
+
+            //Bulk copies from the buffer, which are much faster than decoding the files one at a time
+            int[] blockOffsets = new int[(int) blocks];
+            buffer.asIntBuffer().get(blockOffsets);
+            buffer.position(buffer.position() + blockOffsets.length * 4);
+            byte[] data = new byte[dataLength];
+            buffer.get(data);
+            long[] sizes = new long[count], timestamps = new long[count];
+            buffer.asLongBuffer().get(sizes);
+            buffer.position(buffer.position() + count * 8);
+            buffer.asLongBuffer().get(timestamps);
+            buffer.position(buffer.position() + count * 8);
+            int[] contentTypeRefs = new int[count];
+            buffer.asIntBuffer().get(contentTypeRefs);
+
+            Entries entries = new Entries(count, data, blockOffsets, sizes, timestamps, contentTypeRefs, contentTypes);
+            //Lookups trust the offsets and lengths, so check them all once rather than failing part way through one
+            if(!entries.isValid()) return index;
+            index.entries = entries;
+            index.cursor = cursor;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException ex) {
+            //The index starts empty, so every file is listed again
+        }
+        return index;
+    }
+
+    /**
+     * Saves the index to a file, along with its refresh cursor. The index is written to a temporary file first,
+     * so an interrupted save does not destroy the previous index.
+     *
+     * @param file The file which the index should be saved to
+     */
+    public void save(File file){
+        Entries entries;
+        String cursor;
+        synchronized(this){
+            entries = this.entries;
+            cursor = this.cursor;
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            try(DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), B2Client.BUFFER_SIZE))){
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                writeString(outputStream, bucket.getID());
+                writeString(outputStream, cursor);
+                outputStream.writeInt(entries.count);
+                outputStream.writeInt(entries.contentTypes.length);
+                for(String contentType : entries.contentTypes) writeString(outputStream, contentType);
+                outputStream.writeInt(entries.data.length);
+                for(int offset : entries.blockOffsets) outputStream.writeInt(offset);
+                outputStream.write(entries.data);
+                for(long size : entries.sizes) outputStream.writeLong(size);
+                for(long timestamp : entries.timestamps) outputStream.writeLong(timestamp);
+                for(int contentTypeRef : entries.contentTypeRefs) outputStream.writeInt(contentTypeRef);
+            }
+
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to save bucket index to " + file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Lists the whole bucket, replacing everything in the index, and moves the cursor back to the start.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     */
+    public synchronized void refreshAll(B2Session session){
+        cursor = null;
+        refresh(session, Long.MAX_VALUE);
+    }
+
+    /**
+     * Lists the next window of the bucket, starting at the cursor, and replaces the files in that window.
+     * The cursor moves to the end of the window, and back to the start of the bucket once the end is reached,
+     * so calling this regularly sweeps the whole bucket with a bounded number of requests each time.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param maxFileCount Largest number of files to list in this window
+     * @return True if the window reached the end of the bucket
+     */
+    public synchronized boolean refresh(B2Session session, long maxFileCount){
+        String start = cursor, next = start;
+        List<B2File> files = new ArrayList<B2File>();
+        do {
+            int count = (int) Math.min(pageSize, Math.max(1, maxFileCount - files.size()));
+            B2FilePage page = client.listFileNames(session, bucket, next, count, null, null);
+            files.addAll(page.getFiles());
+            next = page.getNextFileName();
+        } while(next != null && files.size() < maxFileCount);
+
+        //Every name from the start of the window up to the next page has just been listed
+        replace(start == null ? null : toBytes(start), next == null ? null : toBytes(next), files);
+        cursor = next;
+        return next == null;
+    }
+
+    /**
+     * Lists every file with a prefix, replacing the files in the index which have that prefix. This is useful
+     * after changing the files under a prefix, without waiting for the cursor to reach it.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param prefix The prefix which should be listed again
+     */
+    public synchronized void refreshPrefix(B2Session session, String prefix){
+        List<B2File> files = new ArrayList<B2File>();
+        String next = prefix;
+        do {
+            B2FilePage page = client.listFileNames(session, bucket, next, pageSize, prefix, null);
+            files.addAll(page.getFiles());
+            next = page.getNextFileName();
+        } while(next != null);
+
+        byte[] start = toBytes(prefix);
+        replace(start, getSuccessor(start), files);
+    }
+
+    /**
+     * Replaces the files with names from start up to end with those listed, building new arrays so that lookups
+     * which are running keep using the old ones.
+     *
+     * @param start First name which was listed, or null for the start of the bucket
+     * @param end Name after the last which was listed, or null for the end of the bucket
+     * @param files Files which were listed, in name order
+     */
+    private void replace(byte[] start, byte[] end, List<B2File> files){
+        Entries old = entries;
+        Builder builder = new Builder();
+        boolean added = false;
+
+        Reader reader = new Reader(old);
+        while(reader.next()){
+            if(start == null || reader.compareTo(start) >= 0){
+                if(end != null && reader.compareTo(end) >= 0){
+                    if(!added) add(builder, files);
+                    added = true;
+                }else{
+                    continue;
+                }
+            }
+            builder.add(reader.name, reader.nameLength, reader.ID, reader.IDLength,
+                    old.sizes[reader.index], old.timestamps[reader.index], old.contentTypes[old.contentTypeRefs[reader.index]]);
+        }
+        if(!added) add(builder, files);
+        entries = builder.build();
+    }
+
+    private static void add(Builder builder, List<B2File> files){
+        for(B2File file : files){
+            byte[] name = toBytes(file.getName()), ID = toBytes(file.getID());
+            builder.add(name, name.length, ID, ID.length, file.getSize(), file.getUploadTimestamp(), file.getContentType());
+        }
+    }
+
+    /**
+     * Checks whether a file with a name is in the index.
+     *
+     * @param name The name of the file
+     * @return True if the file was in the bucket when its name was last refreshed
+     */
+    public boolean contains(String name){
+        byte[] key = toBytes(name);
+        Reader reader = new Reader(entries);
+        return reader.seek(key) && reader.compareTo(key) == 0;
+    }
+
+    /**
+     * Gets the latest version of a file from the index.
+     *
+     * @param name The name of the file
+     * @return The file, without its SHA1 hash, or null if it is not in the index
+     */
+    public B2File getFile(String name){
+        byte[] key = toBytes(name);
+        Reader reader = new Reader(entries);
+        if(!reader.seek(key) || reader.compareTo(key) != 0) return null;
+        return reader.toFile();
+    }
+
+    /**
+     * Gets every file in the index whose name starts with a prefix.
+     *
+     * @param prefix The prefix, or an empty String for every file
+     * @return The files, without their SHA1 hashes, in name order
+     */
+    public List<B2File> getFiles(String prefix){
+        List<B2File> files = new ArrayList<B2File>();
+        byte[] key = toBytes(prefix);
+        Reader reader = new Reader(entries);
+        for(boolean found = reader.seek(key); found && reader.startsWith(key); found = reader.next()){
+            files.add(reader.toFile());
+        }
+        return files;
+    }
+
+    /**
+     * Counts the files in the index whose name starts with a prefix, without creating a B2File for each.
+     *
+     * @param prefix The prefix, or an empty String for every file
+     * @return Number of files
+     */
+    public int countFiles(String prefix){
+        int count = 0;
+        byte[] key = toBytes(prefix);
+        Reader reader = new Reader(entries);
+        for(boolean found = reader.seek(key); found && reader.startsWith(key); found = reader.next()) count++;
+        return count;
+    }
+
+    /**
+     * Gets the number of files in the index.
+     *
+     * @return Number of files
+     */
+    public int size(){
+        return entries.count;
+    }
+
+    /**
+     * Gets the approximate memory used by the index, not counting fixed overheads.
+     *
+     * @return Number of bytes
+     */
+    public long getMemoryUsage(){
+        Entries entries = this.entries;
+        return entries.data.length + entries.blockOffsets.length * 4L + entries.count * 20L;
+    }
+
+    /**
+     * Gets the name which the next call to refresh starts at.
+     *
+     * @return The name, or null if the next refresh starts at the beginning of the bucket
+     */
+    public synchronized String getCursor(){
+        return cursor;
+    }
+
+    /**
+     * Sets the number of files fetched in each request.
+     *
+     * @param pageSize Files per request, between 1 and B2FileLister.MAXIMUM_FILE_COUNT
+     */
+    public synchronized void setPageSize(int pageSize){
+        if(pageSize < 1 || pageSize > B2FileLister.MAXIMUM_FILE_COUNT){
+            throw new IllegalArgumentException("Page size must be between 1 and " + B2FileLister.MAXIMUM_FILE_COUNT);
+        }
+        this.pageSize = pageSize;
+    }
+
+    private static byte[] toBytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the first name after every name starting with a prefix, by dropping any trailing 0xFF bytes and
+     * increasing the last byte.
+     *
+     * @return The name, or null if no name comes after the prefix
+     */
+    private static byte[] getSuccessor(byte[] prefix){
+        for(int i = prefix.length - 1; i >= 0; i--){
+            if(prefix[i] != (byte) 0xFF){
+                byte[] successor = Arrays.copyOf(prefix, i + 1);
+                successor[i]++;
+                return successor;
+            }
+        }
+        return null;
+    }
+
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        if(value == null){
+            outputStream.writeInt(-1);
+            return;
+        }
+        byte[] bytes = toBytes(value);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer){
+        int length = buffer.getInt();
+        if(length < 0) return null;
+        if(length > buffer.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares bytes as unsigned values, which puts UTF-8 in the same order as B2 lists names.
+     */
+    private static int compare(byte[] a, int aOffset, int aLength, byte[] b, int bLength){
+        int length = Math.min(aLength, bLength);
+        for(int i = 0; i < length; i++){
+            int order = (a[aOffset + i] & 0xFF) - (b[i] & 0xFF);
+            if(order != 0) return order;
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Immutable contents of an index. Each file is stored in data as the length of the name it shares with the
+     * file before, then the length and bytes of the rest of the name, then its ID in the same way. The first file
+     * of every block shares nothing, so decoding can start at any block. All lengths are variable length integers.
+     */
+    private static class Entries {
+
+        private final int count;
+        private final byte[] data;
+        private final int[] blockOffsets;
+        private final long[] sizes, timestamps;
+        private final int[] contentTypeRefs;
+        private final String[] contentTypes;
+
+        private Entries(int count, byte[] data, int[] blockOffsets, long[] sizes, long[] timestamps,
+                        int[] contentTypeRefs, String[] contentTypes){
+            this.count = count;
+            this.data = data;
+            this.blockOffsets = blockOffsets;
+            this.sizes = sizes;
+            this.timestamps = timestamps;
+            this.contentTypeRefs = contentTypeRefs;
+            this.contentTypes = contentTypes;
+        }
+
+        /**
+         * Checks that every block starts at its offset, every shared length is within the value before it,
+         * every suffix is within the data and every content type is in the table, as a file may be damaged.
+         *
+         * @return True if the entries can be read without going outside any array
+         */
+        private boolean isValid(){
+            Validator validator = new Validator(data);
+            for(int i = 0; i < count; i++){
+                if(i % BLOCK_SIZE == 0){
+                    if(blockOffsets[i / BLOCK_SIZE] != validator.position) return false;
+                    validator.nameLength = 0;
+                    validator.IDLength = 0;
+                }
+                if(contentTypeRefs[i] < 0 || contentTypeRefs[i] >= contentTypes.length) return false;
+
+                validator.nameLength = validator.readValue(validator.nameLength);
+                if(validator.nameLength < 0) return false;
+                validator.IDLength = validator.readValue(validator.IDLength);
+                if(validator.IDLength < 0) return false;
+            }
+            return validator.position == data.length;
+        }
+
+    }
+
+    /**
+     * Walks the data of Entries with bounds checks, which Reader leaves out for speed.
+     */
+    private static class Validator {
+
+        private final byte[] data;
+        private int position, nameLength, IDLength;
+
+        private Validator(byte[] data){
+            this.data = data;
+        }
+
+        /**
+         * Skips over one front coded value.
+         *
+         * @param previousLength Length of the value before, which the shared length cannot exceed
+         * @return Length of the value, or -1 if it is malformed
+         */
+        private int readValue(int previousLength){
+            int shared = readVarInt();
+            int suffix = shared < 0 || shared > previousLength ? -1 : readVarInt();
+            if(suffix < 0 || suffix > data.length - position) return -1;
+            position += suffix;
+            return shared + suffix;
+        }
+
+        /**
+         * Reads a variable length integer of at most five bytes.
+         *
+         * @return The value, or -1 if it runs past the data or does not fit in an int
+         */
+        private int readVarInt(){
+            int value = 0;
+            for(int shift = 0; shift < 35; shift += 7){
+                if(position >= data.length) return -1;
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) return value;
+            }
+            return -1;
+        }
+
+    }
+
+    /**
+     * Builds Entries from files added in name order.
+     */
+    private static class Builder {
+
+        private int count;
+        private byte[] data = new byte[1024];
+        private int dataLength;
+        private int[] blockOffsets = new int[16];
+        private long[] sizes = new long[BLOCK_SIZE], timestamps = new long[BLOCK_SIZE];
+        private int[] contentTypeRefs = new int[BLOCK_SIZE];
+        private final Map<String, Integer> contentTypes = new HashMap<String, Integer>();
+        private byte[] previousName = new byte[0], previousID = new byte[0];
+        private int previousNameLength, previousIDLength;
+
+        private void add(byte[] name, int nameLength, byte[] ID, int IDLength, long size, long timestamp, String contentType){
+            if(count == sizes.length){
+                sizes = Arrays.copyOf(sizes, count * 2);
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                contentTypeRefs = Arrays.copyOf(contentTypeRefs, count * 2);
+            }
+
+            boolean blockStart = count % BLOCK_SIZE == 0;
+            if(blockStart){
+                int block = count / BLOCK_SIZE;
+                if(block == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, block * 2);
+                blockOffsets[block] = dataLength;
+            }
+            int sharedName = blockStart ? 0 : getShared(previousName, previousNameLength, name, nameLength);
+            int sharedID = blockStart ? 0 : getShared(previousID, previousIDLength, ID, IDLength);
+            write(sharedName, name, nameLength);
+            write(sharedID, ID, IDLength);
+
+            sizes[count] = size;
+            timestamps[count] = timestamp;
+            Integer contentTypeRef = contentTypes.get(contentType);
+            if(contentTypeRef == null){
+                contentTypeRef = contentTypes.size();
+                contentTypes.put(contentType, contentTypeRef);
+            }
+            contentTypeRefs[count] = contentTypeRef;
+            count++;
+
+            previousName = copy(previousName, name, nameLength);
+            previousNameLength = nameLength;
+            previousID = copy(previousID, ID, IDLength);
+            previousIDLength = IDLength;
+        }
+
+        private void write(int shared, byte[] value, int length){
+            ensureCapacity(10 + length - shared);
+            writeVarInt(shared);
+            writeVarInt(length - shared);
+            System.arraycopy(value, shared, data, dataLength, length - shared);
+            dataLength += length - shared;
+        }
+
+        private void writeVarInt(int value){
+            while((value & ~0x7F) != 0){
+                data[dataLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[dataLength++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra){
+            if(dataLength + extra > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, dataLength + extra));
+        }
+
+        private static int getShared(byte[] a, int aLength, byte[] b, int bLength){
+            int length = Math.min(aLength, bLength), shared = 0;
+            while(shared < length && a[shared] == b[shared]) shared++;
+            return shared;
+        }
+
+        private static byte[] copy(byte[] target, byte[] value, int length){
+            if(target.length < length) target = new byte[Math.max(length, target.length * 2)];
+            System.arraycopy(value, 0, target, 0, length);
+            return target;
+        }
+
+        private Entries build(){
+            String[] types = new String[contentTypes.size()];
+            for(Map.Entry<String, Integer> entry : contentTypes.entrySet()) types[entry.getValue()] = entry.getKey();
+            int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            return new Entries(count, Arrays.copyOf(data, dataLength), Arrays.copyOf(blockOffsets, blocks),
+                    Arrays.copyOf(sizes, count), Arrays.copyOf(timestamps, count), Arrays.copyOf(contentTypeRefs, count), types);
+        }
+
+    }
+
+    /**
+     * Decodes Entries one file at a time, reusing its buffers so that scanning does not create any objects.
+     */
+    private static class Reader {
+
+        private final Entries entries;
+        private int index = -1, position;
+        private byte[] name = new byte[128], ID = new byte[128];
+        private int nameLength, IDLength;
+
+        private Reader(Entries entries){
+            this.entries = entries;
+        }
+
+        /**
+         * Moves to the next file.
+         *
+         * @return False if there are no more files
+         */
+        private boolean next(){
+            if(index + 1 >= entries.count) return false;
+            index++;
+            if(index % BLOCK_SIZE == 0) position = entries.blockOffsets[index / BLOCK_SIZE];
+
+            nameLength = readVarInt();
+            int suffix = readVarInt();
+            name = read(name, nameLength, suffix);
+            nameLength += suffix;
+
+            IDLength = readVarInt();
+            suffix = readVarInt();
+            ID = read(ID, IDLength, suffix);
+            IDLength += suffix;
+            return true;
+        }
+
+        /**
+         * Moves to the first file whose name is not before a key, by searching the first names of the blocks
+         * and then decoding within one block.
+         *
+         * @return False if every name is before the key
+         */
+        private boolean seek(byte[] key){
+            int low = 0, high = entries.blockOffsets.length - 1, block = 0;
+            while(low <= high){
+                int middle = (low + high) >>> 1;
+                if(compareHead(middle, key) <= 0){
+                    block = middle;
+                    low = middle + 1;
+                }else{
+                    high = middle - 1;
+                }
+            }
+
+            index = block * BLOCK_SIZE - 1;
+            while(next()){
+                if(compareTo(key) >= 0) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Compares the first name of a block with a key, without decoding it.
+         */
+        private int compareHead(int block, byte[] key){
+            position = entries.blockOffsets[block];
+            readVarInt();
+            int length = readVarInt();
+            return compare(entries.data, position, length, key, key.length);
+        }
+
+        private int compareTo(byte[] key){
+            return compare(name, 0, nameLength, key, key.length);
+        }
+
+        private boolean startsWith(byte[] prefix){
+            return nameLength >= prefix.length && compare(name, 0, prefix.length, prefix, prefix.length) == 0;
+        }
+
+        private byte[] read(byte[] target, int shared, int suffix){
+            if(target.length < shared + suffix) target = Arrays.copyOf(target, Math.max(shared + suffix, target.length * 2));
+            System.arraycopy(entries.data, position, target, shared, suffix);
+            position += suffix;
+            return target;
+        }
+
+        private int readVarInt(){
+            int value = 0;
+            for(int shift = 0; ; shift += 7){
+                byte b = entries.data[position++];
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) return value;
+            }
+        }
+
+        private B2File toFile(){
+            return new B2File(new String(name, 0, nameLength, StandardCharsets.UTF_8),
+                    entries.contentTypes[entries.contentTypeRefs[index]], new String(ID, 0, IDLength, StandardCharsets.UTF_8),
+                    entries.sizes[index], entries.timestamps[index]);
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2DeleteResult;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes file versions in bulk. Versions are streamed from b2_list_file_versions one page at a time, while
+ * a pool of worker threads deletes them, so memory use does not depend on the number of versions.
+ * Each deletion is retried according to the retry policy of the client, and one failed version does not
+ * stop the rest. A retention policy can keep the newest versions of every file.
+ */
+public class B2BulkDeleter {
+
+    /**
+     * Receives progress updates while versions are being deleted. It is called from the worker threads, so
+     * must be thread-safe.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after each version has been deleted or has failed.
+         *
+         * @param file The version which was processed
+         * @param deleted Number of versions deleted so far
+         * @param failed Number of versions which have failed so far
+         */
+        void onProgress(B2File file, long deleted, long failed);
+
+    }
+
+    private final B2Client client;
+    private final B2Session session;
+    private int threads = 16, keepLatest;
+    private ProgressListener listener;
+
+    /**
+     * Constructs a B2BulkDeleter which deletes every version it is asked to, using 16 threads.
+     *
+     * @param client The B2Client used for all requests
+     * @param session Session authenticated with the API, which will be used as Authorization
+     */
+    public B2BulkDeleter(B2Client client, B2Session session){
+        this.client = client;
+        this.session = session;
+    }
+
+    /**
+     * Deletes the versions of every file with a prefix, apart from those kept by the retention policy.
+     *
+     * @param bucket The B2Bucket containing the files
+     * @param prefix Only delete files whose names start with this prefix, or null for the whole bucket
+     * @return A B2DeleteResult describing how many versions were deleted
+     */
+    public B2DeleteResult deleteVersions(B2Bucket bucket, String prefix){
+        return deleteVersions(bucket, prefix, keepLatest);
+    }
+
+    private B2DeleteResult deleteVersions(B2Bucket bucket, String prefix, int keepLatest){
+        B2FileLister lister = new B2FileLister(client, session, bucket);
+        lister.setAllVersions(true);
+        lister.setMaxFileCount(B2FileLister.MAXIMUM_FILE_COUNT);
+        lister.setPrefix(prefix);
+
+        final AtomicLong deleted = new AtomicLong(), failedCount = new AtomicLong();
+        final List<B2File> failed = Collections.synchronizedList(new ArrayList<B2File>());
+        long kept = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //Bound the queue, so listing does not run far ahead of the deletions
+        final Semaphore slots = new Semaphore(threads * 4);
+        String name = null;
+        int versions = 0;
+
+        try {
+            //Versions are listed newest first within each name, so the first few of each name are the ones to keep
+            for(final B2File file : lister){
+                if(!file.getName().equals(name)){
+                    name = file.getName();
+                    versions = 0;
+                }
+                if(++versions <= keepLatest){
+                    kept++;
+                    continue;
+                }
+
+                slots.acquire();
+                executor.execute(() -> {
+                    try {
+                        client.deleteFile(session, file);
+                        deleted.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        failed.add(file);
+                        failedCount.incrementAndGet();
+                    } finally {
+                        slots.release();
+                    }
+                    if(listener != null) listener.onProgress(file, deleted.get(), failedCount.get());
+                });
+            }
+
+            executor.shutdown();
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new B2APIException("Interrupted while deleting files in " + bucket.getName(), ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new B2DeleteResult(deleted.get(), kept, new ArrayList<B2File>(failed));
+    }
+
+    /**
+     * Deletes every version of every file in a bucket, and then the bucket itself. The retention policy is
+     * ignored. If any version cannot be deleted, the bucket is left in place.
+     *
+     * @param bucket The B2Bucket which should be deleted
+     * @return A B2DeleteResult describing how many versions were deleted
+     */
+    public B2DeleteResult purge(B2Bucket bucket){
+        B2DeleteResult result = deleteVersions(bucket, null, 0);
+        if(result.getFailed().isEmpty()) client.deleteBucket(session, bucket);
+        return result;
+    }
+
+    /**
+     * Sets how many of the newest versions of each file are kept. Hidden files count as versions.
+     *
+     * @param keepLatest Number of versions to keep, or 0 to delete every version
+     */
+    public void setKeepLatest(int keepLatest){
+        if(keepLatest < 0) throw new IllegalArgumentException("Number of versions to keep cannot be negative");
+        this.keepLatest = keepLatest;
+    }
+
+    /**
+     * Sets the number of versions which are deleted at the same time.
+     *
+     * @param threads The number of worker threads, which must be at least one
+     */
+    public void setThreads(int threads){
+        if(threads < 1) throw new IllegalArgumentException("At least one thread is required");
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the listener which is told about each version as it is processed.
+     *
+     * @param listener The listener, or null for no progress updates
+     */
+    public void setProgressListener(ProgressListener listener){
+        this.listener = listener;
+    }
+
+}
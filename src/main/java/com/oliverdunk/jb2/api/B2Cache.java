@@ -0,0 +1,184 @@
+package com.oliverdunk.jb2.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe cache with a fixed number of entries, which evicts the least recently used entry when full
+ * and treats entries older than the time to live as missing.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the cached values
+ */
+public class B2Cache<K, V> {
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final LinkedHashMap<K, CachedValue<V>> entries;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Constructs a B2Cache.
+     *
+     * @param maxEntries Largest number of entries kept, which must be at least one
+     * @param timeToLive Milliseconds after which an entry expires
+     */
+    public B2Cache(final int maxEntries, long timeToLive){
+        if(maxEntries < 1) throw new IllegalArgumentException("At least one entry is required");
+        this.maxEntries = maxEntries;
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+        //Access order, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest){
+                if(size() <= maxEntries) return false;
+                removed(eldest.getKey(), eldest.getValue().value);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gets a value, counting a hit or a miss.
+     *
+     * @param key The key which the value was stored with
+     * @return The value, or null if it is missing or has expired
+     */
+    public V get(K key){
+        synchronized(entries){
+            CachedValue<V> entry = entries.get(key);
+            if(entry != null && System.nanoTime() - entry.expires < 0){
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if(entry != null){
+                entries.remove(key);
+                removed(key, entry.value);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a value, replacing any previous value for the key and restarting its time to live.
+     *
+     * @param key The key to store the value with
+     * @param value The value, which must not be null
+     */
+    public void put(K key, V value){
+        CachedValue<V> entry = new CachedValue<V>(value, System.nanoTime() + timeToLive);
+        synchronized(entries){
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param key The key which the value was stored with
+     * @return The removed value, even if it had expired, or null if there was none
+     */
+    public V remove(K key){
+        CachedValue<V> entry;
+        synchronized(entries){
+            entry = entries.remove(key);
+            if(entry != null) removed(key, entry.value);
+        }
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Removes every value matching a condition. This checks every entry, so is only suitable for rare
+     * invalidations.
+     *
+     * @param condition Returns true for values which should be removed
+     */
+    public void removeIf(Predicate<? super V> condition){
+        synchronized(entries){
+            Iterator<Map.Entry<K, CachedValue<V>>> iterator = entries.entrySet().iterator();
+            while(iterator.hasNext()){
+                Map.Entry<K, CachedValue<V>> entry = iterator.next();
+                if(condition.test(entry.getValue().value)){
+                    iterator.remove();
+                    removed(entry.getKey(), entry.getValue().value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every value.
+     */
+    public void clear(){
+        synchronized(entries){
+            for(Map.Entry<K, CachedValue<V>> entry : entries.entrySet()) removed(entry.getKey(), entry.getValue().value);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Called whenever an entry leaves the cache, whether it was removed, evicted or found to have expired, so
+     * a subclass can keep an index of the keys. This is called while the cache is locked, so must not use it.
+     *
+     * @param key The key which the value was stored with
+     * @param value The value which was removed
+     */
+    protected void removed(K key, V value){
+    }
+
+    /**
+     * Gets the number of entries, including any which have expired but not yet been removed.
+     *
+     * @return Number of cached entries
+     */
+    public int size(){
+        synchronized(entries){
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the largest number of entries which are kept.
+     *
+     * @return Maximum number of entries
+     */
+    public int getMaxEntries(){
+        return maxEntries;
+    }
+
+    /**
+     * Gets the number of lookups which found a value.
+     *
+     * @return Number of hits since the cache was created
+     */
+    public long getHits(){
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups which did not find a value.
+     *
+     * @return Number of misses since the cache was created
+     */
+    public long getMisses(){
+        return misses.get();
+    }
+
+    private static class CachedValue<V> {
+
+        private final V value;
+        private final long expires;
+
+        private CachedValue(V value, long expires){
+            this.value = value;
+            this.expires = expires;
+        }
+
+    }
+
+}
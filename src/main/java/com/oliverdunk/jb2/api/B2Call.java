@@ -0,0 +1,155 @@
+package com.oliverdunk.jb2.api;
+
+/**
+ * Represents a finished call to the B2 API, as reported to a B2Instrumentation. Times are in nanoseconds,
+ * and byte counts cover every attempt, so they include data which was sent again by retries.
+ */
+public class B2Call {
+
+    private final String method, errorCode;
+    private final int statusCode, retries;
+    private final long startTime, timeToFirstByte, latency, bytesSent, bytesReceived, queueWait;
+    private final Throwable failure;
+
+    /**
+     * Constructs a B2Call.
+     *
+     * @param method Name of the API method, such as b2_list_file_names
+     * @param statusCode HTTP status code of the last response, or 0 if no response was received
+     * @param errorCode The code of the error returned by B2, or null
+     * @param startTime Time the call started, in milliseconds since the epoch
+     * @param timeToFirstByte Nanoseconds between sending the last request and receiving its response, or -1
+     * @param latency Nanoseconds taken by the whole call, including retries
+     * @param bytesSent Number of bytes of request bodies sent
+     * @param bytesReceived Number of bytes of response bodies received
+     * @param retries Number of attempts after the first
+     * @param queueWait Nanoseconds spent waiting for a transfer slot or for bandwidth
+     * @param failure The exception which the call failed with, or null if it succeeded
+     */
+    B2Call(String method, int statusCode, String errorCode, long startTime, long timeToFirstByte, long latency,
+           long bytesSent, long bytesReceived, int retries, long queueWait, Throwable failure){
+        this.method = method;
+        this.statusCode = statusCode;
+        this.errorCode = errorCode;
+        this.startTime = startTime;
+        this.timeToFirstByte = timeToFirstByte;
+        this.latency = latency;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.retries = retries;
+        this.queueWait = queueWait;
+        this.failure = failure;
+    }
+
+    /**
+     * Gets the name of the API method, such as b2_list_file_names. Downloads are reported as
+     * b2_download_file_by_id and uploads as b2_upload_file or b2_upload_part.
+     *
+     * @return Name of the method
+     */
+    public String getMethod(){
+        return method;
+    }
+
+    /**
+     * Gets the HTTP status code of the last response.
+     *
+     * @return Status code, or 0 if no response was received
+     */
+    public int getStatusCode(){
+        return statusCode;
+    }
+
+    /**
+     * Gets the code of the error returned by B2, such as service_unavailable.
+     *
+     * @return Error code, or null if the call succeeded or B2 did not return a code
+     */
+    public String getErrorCode(){
+        return errorCode;
+    }
+
+    /**
+     * Gets the time the call started.
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getStartTime(){
+        return startTime;
+    }
+
+    /**
+     * Gets the time between finishing sending the last request, including its body, and receiving the start
+     * of its response.
+     *
+     * @return Nanoseconds, or -1 if no response was received
+     */
+    public long getTimeToFirstByte(){
+        return timeToFirstByte;
+    }
+
+    /**
+     * Gets the time taken by the whole call, including retries and the delays between them.
+     *
+     * @return Nanoseconds
+     */
+    public long getLatency(){
+        return latency;
+    }
+
+    /**
+     * Gets the number of bytes of request bodies sent by every attempt.
+     *
+     * @return Number of bytes
+     */
+    public long getBytesSent(){
+        return bytesSent;
+    }
+
+    /**
+     * Gets the number of bytes of response bodies received by every attempt.
+     *
+     * @return Number of bytes
+     */
+    public long getBytesReceived(){
+        return bytesReceived;
+    }
+
+    /**
+     * Gets the number of times the call was retried.
+     *
+     * @return Number of attempts after the first
+     */
+    public int getRetries(){
+        return retries;
+    }
+
+    /**
+     * Gets the time the call spent waiting for a transfer slot, and for bandwidth if a B2BandwidthScheduler
+     * is in use. This is part of the latency.
+     *
+     * @return Time in nanoseconds
+     */
+    public long getQueueWait(){
+        return queueWait;
+    }
+
+    /**
+     * Gets the exception which the call failed with.
+     *
+     * @return The exception, or null if the call succeeded
+     */
+    public Throwable getFailure(){
+        return failure;
+    }
+
+    /**
+     * Checks whether the call succeeded.
+     *
+     * @return True if the call did not throw
+     */
+    public boolean isSuccessful(){
+        return failure == null;
+    }
+
+}
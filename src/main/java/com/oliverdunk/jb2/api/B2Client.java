@@ -0,0 +1,1912 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.http.B2Connection;
+import com.oliverdunk.jb2.http.B2Transport;
+import com.oliverdunk.jb2.http.URLConnectionTransport;
+import com.oliverdunk.jb2.json.JsonDecoder;
+import com.oliverdunk.jb2.json.JsonFields;
+import com.oliverdunk.jb2.json.JsonReader;
+import com.oliverdunk.jb2.json.JsonWriter;
+import com.oliverdunk.jb2.models.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe client for the B2 API, which sends all of its requests using a pluggable B2Transport.
+ * A single client should be shared between threads, so connections can be reused between requests.
+ */
+public class B2Client {
+
+    //User-Agent field sent with all HTTP requests.
+    private static final String USER_AGENT = "JB2/1.0";
+    //URL used for b2_authorize_account unless another is configured.
+    public static final String DEFAULT_AUTHORIZATION_URL = "https://api.backblaze.com";
+    //Size of the buffer used when streaming file contents.
+    static final int BUFFER_SIZE = 64 * 1024;
+    //Value of X-Bz-Content-Sha1 when the hash is sent as 40 hex digits after the content.
+    static final String HASH_AT_END = "hex_digits_at_end";
+    private static final int SHA1_HEX_LENGTH = 40;
+    //Bytes a download must receive between failures for the failures not to use up its retry budget.
+    static final long RESUME_PROGRESS = 1024 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //Decoder used for responses where only a few top level fields are needed.
+    private static final JsonDecoder<JsonFields> FIELDS = JsonFields::read;
+    private static final JsonWriter EMPTY_BODY = new JsonWriter().beginObject().endObject();
+    //Names which transfers are reported under, matching the API methods they use.
+    static final String UPLOAD_FILE = "b2_upload_file", UPLOAD_PART = "b2_upload_part", DOWNLOAD_FILE = "b2_download_file_by_id";
+    //Methods which B2 would apply twice if sent again, creating a second copy, large file or bucket.
+    private static final List<String> UNREPEATABLE_METHODS = Arrays.asList("b2_copy_file", "b2_start_large_file", "b2_create_bucket");
+
+    private final B2Transport transport;
+    private final String authorizationURL;
+    //Encoded credentials of each session this client authorized, so it can authorize again when a token expires.
+    private final Map<B2Session, String> credentials = Collections.synchronizedMap(new WeakHashMap<B2Session, String>());
+    private volatile B2RetryPolicy retryPolicy = new B2RetryPolicy();
+    private volatile B2ConcurrencyLimiter transferLimiter = new B2ConcurrencyLimiter();
+    private volatile B2MetadataCache metadataCache;
+    private volatile B2Instrumentation instrumentation = B2Instrumentation.NONE;
+    private volatile B2BandwidthScheduler bandwidthScheduler;
+    private volatile B2TransferPriority transferPriority = B2TransferPriority.NORMAL;
+    private volatile boolean verifySuppliedHashes;
+    //Coalesce identical concurrent lookups, so a popular object is only fetched once at a time.
+    private final B2SingleFlight<String, B2File> fileFlights = new B2SingleFlight<String, B2File>();
+    private final B2SingleFlight<String, B2Bucket> bucketFlights = new B2SingleFlight<String, B2Bucket>();
+    private final B2SingleFlight<String, JsonFields> authorizationFlights = new B2SingleFlight<String, JsonFields>();
+    //Uploader used to decide when files are uploaded using the large file API.
+    private final B2LargeFileUploader largeFileUploader = new B2LargeFileUploader(this);
+    //Downloader used to decide when files are downloaded in parallel ranges.
+    private final B2ParallelDownloader parallelDownloader = new B2ParallelDownloader(this);
+
+    /**
+     * Constructs a B2Client which uses a URLConnectionTransport with the default timeouts.
+     */
+    public B2Client(){
+        this(new URLConnectionTransport());
+    }
+
+    /**
+     * Constructs a B2Client which sends requests using the given transport.
+     *
+     * @param transport The transport used for all HTTP requests
+     */
+    public B2Client(B2Transport transport){
+        this(transport, DEFAULT_AUTHORIZATION_URL);
+    }
+
+    /**
+     * Constructs a B2Client which sends requests using the given transport, and authorizes accounts
+     * using the given base URL. Further requests use the URLs returned by b2_authorize_account.
+     *
+     * @param transport The transport used for all HTTP requests
+     * @param authorizationURL Base URL used for b2_authorize_account, such as https://api.backblaze.com
+     */
+    public B2Client(B2Transport transport, String authorizationURL){
+        this.transport = transport;
+        this.authorizationURL = authorizationURL;
+    }
+
+    private JsonFields call(B2Session session, String method, JsonWriter body) throws B2APIException {
+        return call(session, method, body, FIELDS);
+    }
+
+    /**
+     * Calls an API method using the URL and token of a session, retrying according to the retry policy.
+     * The session is read again for every attempt, so a retry after re-authorization uses the new token.
+     * Methods which are not safe to repeat are not retried once their request has been sent, since a broken
+     * connection does not say whether B2 has already acted on it.
+     */
+    private <T> T call(final B2Session session, final String method, final JsonWriter body, final JsonDecoder<T> decoder) throws B2APIException {
+        final boolean repeatable = !UNREPEATABLE_METHODS.contains(method);
+        return trace(method, () -> retry(session, false, method,
+                () -> send(session.getAPIURL(), method, session.getAuthToken(), body, decoder, repeatable)));
+    }
+
+    /**
+     * Sends a single request to an API method, without any retries.
+     *
+     * @param repeatable False if a connection failure after the request has been sent must not be retried
+     */
+    private <T> T send(String URL, String method, String authorization, JsonWriter body, JsonDecoder<T> decoder,
+                       boolean repeatable) throws IOException {
+        try(B2Connection connection = openConnection(URL + "/b2api/v1/" + method, authorization)){
+            writeJSON(connection, body);
+            try {
+                return readResponse(connection, decoder);
+            } catch (IOException ex) {
+                if(repeatable) throw ex;
+                throw new RequestSentException(ex);
+            }
+        }
+    }
+
+    /**
+     * Thrown when the connection fails after a request which is not safe to repeat has been sent, so B2 may
+     * already have acted on it. The retry policy never retries these failures.
+     */
+    static class RequestSentException extends IOException {
+
+        RequestSentException(IOException cause){
+            super("Connection failed after the request was sent", cause);
+        }
+
+    }
+
+    /**
+     * Runs an operation until it succeeds, the failure cannot be retried, or the retry budget is spent.
+     * When a session token has expired, the session is authorized again before the next attempt.
+     *
+     * @param session The session used by the operation, or null if it does not use one
+     * @param upload True to use the upload retry budget instead of the metadata budget
+     * @param description Name of the operation, used in error messages
+     * @param attempt The operation, which must be safe to repeat
+     * @return The result of the first successful attempt
+     */
+    <T> T retry(B2Session session, boolean upload, String description, Attempt<T> attempt) throws B2APIException {
+        B2RetryPolicy policy = retryPolicy;
+        int maxAttempts = upload ? policy.getMaxUploadAttempts() : policy.getMaxAttempts();
+
+        for(int attempts = 1; ; attempts++){
+            B2APIException failure;
+            try {
+                return attempt.run();
+            } catch (IOException ex) {
+                failure = new B2APIException(description + " failed", ex);
+            } catch (B2APIException ex) {
+                failure = ex;
+            }
+
+            if(attempts >= maxAttempts || !policy.isRetryable(failure)) throw failure;
+            B2Trace trace = B2Trace.current();
+            if(trace != null) trace.retried();
+            //Upload tokens belong to the upload URL, which the next attempt replaces
+            if(!upload && B2RetryPolicy.isExpiredToken(failure) && session != null && reauthorize(session, failure)) continue;
+            policy.backoff(attempts, failure);
+        }
+    }
+
+    /**
+     * Authorizes a session again using the credentials it was first authorized with, unless another thread
+     * has already replaced its token.
+     *
+     * @param session The session whose token has expired
+     * @param failure The failure caused by the expired token
+     * @return False if this client does not have the credentials for the session
+     */
+    private boolean reauthorize(B2Session session, B2APIException failure){
+        String encodedAuth = credentials.get(session);
+        if(encodedAuth == null) return false;
+
+        String expiredToken = session.getAuthToken();
+        synchronized(session){
+            if(!expiredToken.equals(session.getAuthToken())) return true;
+            JsonFields result = authorize(encodedAuth);
+            session.update(result.getString("authorizationToken"), result.getString("apiUrl"), result.getString("downloadUrl"));
+        }
+        return true;
+    }
+
+    /**
+     * Remembers the credentials of a session which was not created by this client, such as one loaded from a
+     * token cache, so that it can be authorized again when its token expires.
+     *
+     * @param session The session
+     * @param accountID The account ID of the session
+     * @param applicationKey The application key used to authorize the account
+     */
+    void setCredentials(B2Session session, String accountID, String applicationKey){
+        credentials.put(session, encodeAuthorization(accountID + ":" + applicationKey));
+    }
+
+    /**
+     * Authorizes a session again before its token expires, replacing the token for every holder of the session.
+     *
+     * @param session A session created by this client, or given to setCredentials
+     */
+    void refresh(B2Session session){
+        String encodedAuth = credentials.get(session);
+        if(encodedAuth == null) throw new IllegalStateException("Credentials for the session are not known");
+
+        synchronized(session){
+            JsonFields result = authorize(encodedAuth);
+            session.update(result.getString("authorizationToken"), result.getString("apiUrl"), result.getString("downloadUrl"));
+        }
+    }
+
+    /**
+     * Sends b2_authorize_account, sharing the response between threads which authorize the same credentials
+     * at once, such as every session of an account after its tokens expire together.
+     *
+     * @param encodedAuth Credentials in the format of the Authorization header
+     * @return The fields of the response
+     */
+    private JsonFields authorize(final String encodedAuth){
+        return authorizationFlights.execute(encodedAuth, () -> trace("b2_authorize_account", () -> retry(null, false,
+                "b2_authorize_account", () -> send(authorizationURL, "b2_authorize_account", encodedAuth, EMPTY_BODY, FIELDS, true))));
+    }
+
+    /**
+     * Runs a call, reporting it to the instrumentation once it finishes. A call made while another call to the
+     * same method is already being traced on this thread, such as an upload retrying another upload, is
+     * counted as part of that call.
+     *
+     * @param method Name of the API method being called
+     * @param operation The call, including any retries
+     * @return The result of the call
+     */
+    <T> T trace(String method, Supplier<T> operation){
+        B2Instrumentation instrumentation = this.instrumentation;
+        if(instrumentation == B2Instrumentation.NONE) return operation.get();
+        B2Trace current = B2Trace.current();
+        if(current != null && current.getMethod().equals(method)) return operation.get();
+
+        B2Trace trace = new B2Trace(method);
+        B2Trace previous = trace.enter();
+        B2Call call = null;
+        try {
+            T result = operation.get();
+            call = trace.finish(null);
+            return result;
+        } catch (RuntimeException ex) {
+            call = trace.finish(ex);
+            throw ex;
+        } finally {
+            B2Trace.exit(previous);
+            if(call != null) instrumentation.onCall(call);
+        }
+    }
+
+    /**
+     * Starts tracing a call which outlives the method that started it, such as a download stream.
+     *
+     * @param method Name of the API method being called
+     * @return The trace, or null if calls are not being traced
+     */
+    B2Trace startTrace(String method){
+        return instrumentation == B2Instrumentation.NONE ? null : new B2Trace(method);
+    }
+
+    /**
+     * Reports a call started with startTrace.
+     *
+     * @param trace The trace returned by startTrace, or null
+     * @param failure The exception which the call failed with, or null if it succeeded
+     */
+    void finishTrace(B2Trace trace, Throwable failure){
+        if(trace != null) instrumentation.onCall(trace.finish(failure));
+    }
+
+    /**
+     * Runs a single upload or download once the transfer limiter allows it, reporting how it went so that
+     * the limiter can adapt.
+     *
+     * @param bytes Number of bytes which the transfer sends or receives
+     * @param description Name of the transfer, used in error messages
+     * @param transfer The transfer
+     * @return The result of the transfer
+     */
+    private <T> T transfer(long bytes, String description, Attempt<T> transfer) throws B2APIException {
+        long waitStart = System.nanoTime();
+        B2ConcurrencyLimiter.Permit permit = transferLimiter.acquire();
+        B2Trace trace = B2Trace.current();
+        if(trace != null) trace.waited(System.nanoTime() - waitStart);
+        B2ConcurrencyLimiter.Permit previous = permit.enter();
+        try {
+            T result = transfer.run();
+            permit.success(bytes);
+            return result;
+        } catch (IOException ex) {
+            B2APIException failure = new B2APIException(description + " failed", ex);
+            permit.failure(failure);
+            throw failure;
+        } catch (B2APIException ex) {
+            permit.failure(ex);
+            throw ex;
+        } finally {
+            B2ConcurrencyLimiter.exit(previous);
+            permit.release();
+        }
+    }
+
+    /**
+     * A single attempt at an operation which can be retried.
+     */
+    interface Attempt<T> {
+
+        T run() throws IOException;
+
+    }
+
+    /**
+     * Receives the bytes of a download in order.
+     */
+    interface DownloadSink {
+
+        void write(byte[] bytes, int length) throws IOException;
+
+    }
+
+    /**
+     * Requests the contents of a file from an offset, without retrying.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param offset Position within the file of the first byte to download
+     * @param end Position after the last byte to download, or -1 for the end of the file
+     * @return A connection whose input stream is positioned at the offset
+     */
+    private B2Connection requestDownload(B2Session session, B2File file, long offset, long end) throws IOException {
+        B2Connection connection = openTransfer(session.getDownloadURL() + "/b2api/v1/b2_download_file_by_id", session.getAuthToken());
+        try {
+            boolean partial = offset > 0 || (end >= 0 && end != file.getSize());
+            if(partial) connection.setHeader("Range", "bytes=" + offset + "-" + (end >= 0 ? Long.toString(end - 1) : ""));
+            writeJSON(connection, new JsonWriter().beginObject().name("fileId").value(file.getID()).endObject());
+
+            if(connection.getStatusCode() >= 400) readResponse(connection);
+            if(partial && connection.getStatusCode() != 206){
+                throw new B2APIException("Range request for " + file.getName() + " was not honoured");
+            }
+            return connection;
+        } catch (IOException | RuntimeException ex) {
+            connection.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Requests the contents of a file from an offset, retrying until the server starts sending them.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param offset Position within the file of the first byte to download
+     * @return A connection whose input stream is positioned at the offset
+     */
+    B2Connection connectDownload(B2Session session, B2File file, long offset) throws B2APIException {
+        return retry(session, false, "Download of " + file.getName(), () -> requestDownload(session, file, offset, -1));
+    }
+
+    /**
+     * Downloads part or all of a file in order, passing each byte to a sink once. A failed attempt carries on
+     * from the first byte which was not received, using a Range request, so a dropped connection does not
+     * start the download again. Failures which come after enough progress do not use up the retry budget, so
+     * a long download survives any number of separate interruptions.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param offset Position within the file of the first byte to download
+     * @param end Position after the last byte to download, or -1 for the end of the file
+     * @param digest Digest which every downloaded byte is added to, or null
+     * @param sink Receives the downloaded bytes
+     * @return The SHA1 hash of the whole file reported by the server, or null if the server does not know it
+     */
+    private String download(B2Session session, B2File file, long offset, long end, MessageDigest digest, DownloadSink sink){
+        return trace(DOWNLOAD_FILE, () -> downloadUntilComplete(session, file, offset, end, digest, sink));
+    }
+
+    private String downloadUntilComplete(B2Session session, B2File file, long offset, long end, MessageDigest digest, DownloadSink sink){
+        final String description = "Download of " + file.getName();
+        final long limit = end >= 0 ? end : file.getSize();
+        final long[] position = {offset};
+        final String[] hash = new String[1];
+
+        while(true){
+            long before = position[0];
+            try {
+                retry(session, false, description, () -> transfer(limit - position[0], description, () -> {
+                    //A failure after the last byte only needs the end of the response checking again
+                    if(limit > 0 && position[0] >= limit) return null;
+
+                    try(B2Connection connection = requestDownload(session, file, position[0], end)){
+                        String reported = getContentHash(connection);
+                        if(reported != null) hash[0] = reported;
+
+                        InputStream inputStream = connection.getInputStream();
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int read;
+                        while((end < 0 || position[0] < end)
+                                && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, end < 0 ? buffer.length : end - position[0]))) != -1){
+                            try {
+                                sink.write(buffer, read);
+                            } catch (IOException ex) {
+                                throw localFailure("Failed to write " + description, ex);
+                            }
+                            if(digest != null) digest.update(buffer, 0, read);
+                            position[0] += read;
+                        }
+                    }
+                    if(position[0] < limit) throw new EOFException("Response ended " + (limit - position[0]) + " bytes early");
+                    return null;
+                }));
+                return hash[0];
+            } catch (B2APIException ex) {
+                if(position[0] == offset) throw ex;
+                if(position[0] - before < RESUME_PROGRESS || !retryPolicy.isRetryable(ex)){
+                    throw new B2APIException(description + " is incomplete, with " + (position[0] - offset) + " bytes received", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the SHA1 hash of a completed download against the hash reported by the server, or the hash of
+     * the B2File if the server did not report one.
+     */
+    private static void checkHash(B2File file, String reportedHash, MessageDigest digest) throws B2APIException {
+        String expected = reportedHash != null ? reportedHash : file.getContentSha1();
+        if(expected == null) return;
+
+        String actual = toHex(digest.digest());
+        if(!expected.equals(actual)){
+            throw new B2APIException("SHA1 of downloaded data " + actual + " does not match " + expected + " for " + file.getName());
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while(buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * Opens a POST connection to the given URL, with the headers which are sent with every request.
+     *
+     * @param URL The full URL which the request should be sent to
+     * @param authorization Value of the Authorization header
+     * @return A connection which is ready for the request body to be written
+     * @throws IOException Thrown if the connection could not be opened
+     */
+    B2Connection openConnection(String URL, String authorization) throws IOException {
+        B2Connection connection = transport.open(URL);
+        B2Trace trace = B2Trace.current();
+        if(trace != null) connection = trace.wrap(connection);
+        connection.setHeader("User-Agent", USER_AGENT);
+        connection.setHeader("Authorization", authorization);
+        return connection;
+    }
+
+    /**
+     * Opens a connection for an upload or download, whose body is limited by the bandwidth scheduler if one is set.
+     *
+     * @param URL The full URL which the request should be sent to
+     * @param authorization Value of the Authorization header
+     * @return A connection which is ready for the request body to be written
+     * @throws IOException Thrown if the connection could not be opened
+     */
+    B2Connection openTransfer(String URL, String authorization) throws IOException {
+        B2Connection connection = openConnection(URL, authorization);
+        B2BandwidthScheduler bandwidthScheduler = this.bandwidthScheduler;
+        if(bandwidthScheduler != null){
+            connection = bandwidthScheduler.wrap(connection, transferPriority, B2Trace.current(), B2ConcurrencyLimiter.current());
+        }
+        return connection;
+    }
+
+    /**
+     * Writes JSON as the body of a request.
+     *
+     * @param connection Connection which the body should be written to
+     * @param body The JSON body of the request
+     * @throws IOException Thrown if the body could not be sent
+     */
+    static void writeJSON(B2Connection connection, JsonWriter body) throws IOException {
+        try(OutputStream outputStream = connection.getOutputStream(body.size())){
+            body.writeTo(outputStream);
+        }
+    }
+
+    /**
+     * Reads the top level fields of the JSON response of a connection, throwing a B2APIException if the
+     * API returned an error.
+     *
+     * @param connection Connection which the request has been written to
+     * @return JsonFields representing the successful response
+     * @throws IOException Thrown if an error occurs while reading the response
+     */
+    static JsonFields readResponse(B2Connection connection) throws IOException {
+        return readResponse(connection, FIELDS);
+    }
+
+    /**
+     * Decodes the JSON response of a connection as it is read, throwing a B2APIException if the API
+     * returned an error.
+     *
+     * @param connection Connection which the request has been written to
+     * @param decoder Decoder which turns the response into the result
+     * @return The decoded response
+     * @throws IOException Thrown if an error occurs while reading the response
+     */
+    static <T> T readResponse(B2Connection connection, JsonDecoder<T> decoder) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+        if(connection.getStatusCode() < 400) return decoder.decode(reader);
+
+        JsonFields requestResult;
+        try {
+            requestResult = JsonFields.read(reader);
+        } catch (IOException ex) {
+            //Errors from proxies and load balancers may not be JSON
+            B2APIException exception = new B2APIException("Unexpected error response", ex);
+            exception.setStatusCode(connection.getStatusCode());
+            exception.setRetryAfter(getRetryAfter(connection));
+            throw exception;
+        }
+
+        B2APIException exception = new B2APIException(requestResult.optString("message", "Unexpected error response"));
+        exception.setStatusCode((int) requestResult.optLong("status", connection.getStatusCode()));
+        exception.setIdentifier(requestResult.optString("code", null));
+        exception.setRetryAfter(getRetryAfter(connection));
+        throw exception;
+    }
+
+    /**
+     * Reads the Retry-After header of a response, which B2 sends with 429 and 503 errors.
+     *
+     * @param connection Connection which an error response has been received on
+     * @return Seconds to wait before retrying, or 0 if the header is missing or is not a number of seconds
+     */
+    private static int getRetryAfter(B2Connection connection) throws IOException {
+        String retryAfter = connection.getHeader("Retry-After");
+        if(retryAfter == null) return 0;
+        try {
+            return Math.max(0, Integer.parseInt(retryAfter.trim()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copies a number of bytes from a channel to an OutputStream, followed by the 40 hex digits of their
+     * SHA1 hash. The hash is computed in the same pass as the data is sent, for use with "hex_digits_at_end".
+     *
+     * @param channel Channel which the data should be read from
+     * @param length Number of bytes which should be sent before the hash
+     * @param outputStream Stream which the data and hash will be written to
+     * @return The SHA1 hash of the data which was sent
+     * @throws IOException Thrown if the OutputStream fails
+     * @throws B2APIException Thrown if the channel ends early or fails, which is not retryable
+     */
+    static String writeWithHash(ReadableByteChannel channel, long length, OutputStream outputStream) throws IOException {
+        MessageDigest md = newSHA1();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long remaining = length;
+
+        while(remaining > 0){
+            buffer.clear();
+            if(remaining < buffer.capacity()) buffer.limit((int) remaining);
+            int read;
+            try {
+                read = channel.read(buffer);
+            } catch (IOException ex) {
+                throw localFailure("Failed to read the data being uploaded", ex);
+            }
+            if(read == -1){
+                throw localFailure("Failed to read the data being uploaded",
+                        new EOFException("Input ended " + remaining + " bytes before the expected length"));
+            }
+            md.update(buffer.array(), 0, read);
+            outputStream.write(buffer.array(), 0, read);
+            remaining -= read;
+        }
+
+        String hash = toHex(md.digest());
+        outputStream.write(hash.getBytes(StandardCharsets.US_ASCII));
+        return hash;
+    }
+
+    /**
+     * Wraps a failure of local I/O, such as reading the file being uploaded or writing a download to disk.
+     * The cause is not an IOException, so the retry policy does not mistake it for a broken connection.
+     *
+     * @param message Description of what failed
+     * @param ex The failure
+     * @return An exception which is not retryable
+     */
+    static B2APIException localFailure(String message, IOException ex){
+        return new B2APIException(message, new UncheckedIOException(ex));
+    }
+
+    /**
+     * Opens a local file which is about to be uploaded.
+     *
+     * @param file The file which should be read
+     * @return A channel positioned at the start of the file
+     * @throws B2APIException Thrown if the file cannot be opened, which is not retryable
+     */
+    private static FileChannel openLocal(File file){
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException ex) {
+            throw localFailure("Failed to read " + file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Creates a new SHA1 MessageDigest, which every Java platform is required to support.
+     *
+     * @return A MessageDigest which computes SHA1 hashes
+     */
+    static MessageDigest newSHA1(){
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not supported by this platform", ex);
+        }
+    }
+
+    /**
+     * Gets the SHA1 hash of the start of a FileChannel, using positional reads so the position of the
+     * channel is not changed.
+     *
+     * @param channel Channel which should be hashed
+     * @param length Number of bytes which should be hashed
+     * @return The SHA1 hash of the data in hex
+     */
+    static String getHash(FileChannel channel, long length) throws IOException {
+        return getHash(channel, 0, length);
+    }
+
+    /**
+     * Gets the SHA1 hash of a range of a FileChannel, using positional reads so the position of the
+     * channel is not changed.
+     *
+     * @param channel Channel which should be hashed
+     * @param offset Position of the first byte which should be hashed
+     * @param length Number of bytes which should be hashed
+     * @return The SHA1 hash of the data in hex
+     */
+    static String getHash(FileChannel channel, long offset, long length) throws IOException {
+        MessageDigest md = newSHA1();
+        update(md, channel, offset, length);
+        return toHex(md.digest());
+    }
+
+    /**
+     * Adds a range of a FileChannel to a digest, using positional reads so the position of the channel is
+     * not changed.
+     *
+     * @param md Digest which the range should be added to
+     * @param channel Channel which should be read
+     * @param offset Position of the first byte which should be read
+     * @param length Number of bytes which should be read
+     */
+    static void update(MessageDigest md, FileChannel channel, long offset, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = offset, end = offset + length;
+
+        while(position < end){
+            buffer.clear();
+            if(end - position < buffer.capacity()) buffer.limit((int) (end - position));
+            int read = channel.read(buffer, position);
+            if(read == -1) throw new EOFException("File ended before " + end + " bytes were read");
+            md.update(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * Converts bytes to lowercase hexadecimal, the format used by B2 for SHA1 hashes.
+     *
+     * @param bytes The bytes which should be converted
+     * @return A String with two hex digits per byte
+     */
+    static String toHex(byte[] bytes){
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++){
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Authorizes an account with the B2 API, using the b2_authorize_account method.
+     *
+     * @param accountID Your B2 API account ID
+     * @param applicationKey Your B2 API application key
+     * @return A B2Session instance representing the session created by this request
+     */
+    public B2Session authorizeAccount(String accountID, String applicationKey){
+        String encodedAuth = encodeAuthorization(accountID + ":" + applicationKey);
+        JsonFields requestResult = authorize(encodedAuth);
+
+        String authorizationToken = requestResult.getString("authorizationToken");
+        String apiURL = requestResult.getString("apiUrl");
+        String downloadURL = requestResult.getString("downloadUrl");
+        B2Session session = new B2Session(authorizationToken, accountID, apiURL, downloadURL);
+        credentials.put(session, encodedAuth);
+        return session;
+    }
+
+    /**
+     * Encodes an authentication input into Base64, and formats for the Authorization field.
+     * Used for the authorizeAccount, which does not have the usual authorization token.
+     *
+     * @param input Account ID and application key in the format accountID:applicationKey
+     * @return Encoded Base64 String, with the Basic prefix
+     */
+    private static String encodeAuthorization(String input){
+        byte[] authorizationBytes = input.getBytes(StandardCharsets.UTF_8);
+        String encodedAuthorization = Base64.getEncoder().encodeToString(authorizationBytes);
+        return "Basic " + encodedAuthorization;
+    }
+
+    /**
+     * Creates a new B2Bucket using the API.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucketName A name for the bucket, which is at least six characters and does not start with "b2-"
+     * @param bucketType The privacy level of the bucket which is being created
+     * @return String which is the ID of the bucket
+     */
+    public B2Bucket createBucket(B2Session session, String bucketName, BucketType bucketType){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("accountId").value(session.getAccountID())
+                .name("bucketName").value(bucketName)
+                .name("bucketType").value(bucketType.getIdentifier())
+                .endObject();
+        JsonFields requestResult = call(session, "b2_create_bucket", parameters);
+        B2Bucket bucket = new B2Bucket(bucketName, requestResult.getString("bucketId"), bucketType);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null) cache.putBucket(bucket);
+        return bucket;
+    }
+
+    /**
+     * Deletes a B2Bucket using the API, but only if the bucket contains no versions of any files.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket instance which should be deleted
+     */
+    public void deleteBucket(B2Session session, B2Bucket bucket){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("accountId").value(session.getAccountID())
+                .name("bucketId").value(bucket.getID())
+                .endObject();
+        call(session, "b2_delete_bucket", parameters);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null) cache.removeBucket(bucket);
+    }
+
+    /**
+     * Lists all buckets using the API
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     */
+    public List<B2Bucket> listBuckets(B2Session session){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("accountId").value(session.getAccountID())
+                .endObject();
+        List<B2Bucket> buckets = call(session, "b2_list_buckets", parameters, BUCKET_LIST);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null) for(B2Bucket bucket : buckets) cache.putBucket(bucket);
+        return buckets;
+    }
+
+    /**
+     * Finds a bucket by name, using the metadata cache if one is set.
+     * Concurrent lookups of the same bucket share a single request.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucketName The name of the bucket
+     * @return The bucket, or null if the account has no bucket with the name
+     */
+    public B2Bucket getBucket(B2Session session, String bucketName){
+        final B2MetadataCache cache = metadataCache;
+        B2Bucket bucket = cache != null ? cache.getBucket(bucketName) : null;
+        if(bucket != null) return bucket;
+
+        return bucketFlights.execute(session.getAuthToken() + '/' + bucketName, () -> {
+            JsonWriter parameters = new JsonWriter().beginObject()
+                    .name("accountId").value(session.getAccountID())
+                    .name("bucketName").value(bucketName)
+                    .endObject();
+            for(B2Bucket listed : call(session, "b2_list_buckets", parameters, BUCKET_LIST)){
+                if(!listed.getName().equals(bucketName)) continue;
+                if(cache != null) cache.putBucket(listed);
+                return listed;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Syncs a B2Bucket instance with the API.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket instance which should be synced
+     */
+    public void updateBucket(B2Session session, B2Bucket bucket){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("accountId").value(session.getAccountID())
+                .name("bucketId").value(bucket.getID())
+                .name("bucketType").value(bucket.getType().getIdentifier())
+                .endObject();
+        call(session, "b2_update_bucket", parameters);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null) cache.putBucket(bucket);
+    }
+
+    /**
+     * Prepares the API for a file upload within a given bucket.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @return A B2UploadRequest instance representing where a file should be uploaded
+     */
+    public B2UploadRequest getUploadURL(B2Session session, B2Bucket bucket){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("bucketId").value(bucket.getID())
+                .endObject();
+        JsonFields result = call(session, "b2_get_upload_url", parameters);
+        return new B2UploadRequest(bucket, result.getString("uploadUrl"), result.getString("authorizationToken"));
+    }
+
+    /**
+     * Uploads a file to the API completing the upload request.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param file The file which should be uploaded
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2UploadRequest upload, File file, String name){
+        try(FileChannel channel = openLocal(file)){
+            return uploadFile(upload, channel, file.length(), name);
+        } catch (IOException ex) {
+            throw localFailure("Failed to read " + file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Uploads the contents of an InputStream to the API completing the upload request. The data is read once,
+     * with the SHA1 hash computed while it is sent, so streams such as process output can be uploaded directly.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param inputStream Stream containing the data which should be uploaded, which is not closed
+     * @param length Number of bytes which will be read from the stream
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2UploadRequest upload, InputStream inputStream, long length, String name){
+        return uploadFile(upload, Channels.newChannel(inputStream), length, name);
+    }
+
+    /**
+     * Uploads the contents of a ReadableByteChannel to the API completing the upload request. The data is read
+     * once, with the SHA1 hash computed while it is sent.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param channel Channel containing the data which should be uploaded, which is not closed
+     * @param length Number of bytes which will be read from the channel
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2UploadRequest upload, ReadableByteChannel channel, long length, String name){
+        return trace(UPLOAD_FILE, () -> transfer(length, "Upload of " + name, () -> uploadFileOnce(upload, channel, length, name)));
+    }
+
+    private B2File uploadFileOnce(B2UploadRequest upload, ReadableByteChannel channel, long length, String name) throws IOException {
+        try(B2Connection connection = openTransfer(upload.getUploadURL(), upload.getAuthorizationToken())){
+            connection.setHeader("Content-Type", "b2/x-auto");
+            connection.setHeader("X-Bz-File-Name", name);
+            connection.setHeader("X-Bz-Content-Sha1", HASH_AT_END);
+
+            //Stream the data rather than buffering it, so memory use does not depend on the file size
+            String hash;
+            try(OutputStream outputStream = connection.getOutputStream(length + SHA1_HEX_LENGTH)){
+                hash = writeWithHash(channel, length, outputStream);
+            }
+
+            JsonFields result = readResponse(connection);
+            //The name now refers to the new version
+            B2MetadataCache cache = metadataCache;
+            if(cache != null) cache.removeName(upload.getBucket(), name);
+            return new B2File(name, result.getString("contentType"), result.getString("fileId"), length,
+                    result.optLong("uploadTimestamp", System.currentTimeMillis()), hash);
+        }
+    }
+
+    /**
+     * Uploads the remaining bytes of a ByteBuffer to the API completing the upload request, for data which is
+     * already in memory or mapped from a file. Heap buffers are sent straight from their backing array.
+     * The position of the buffer is not changed, so the same buffer can be uploaded again.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param data Buffer containing the data which should be uploaded, which may be direct or memory-mapped
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2UploadRequest upload, ByteBuffer data, String name, String sha1){
+        final ByteBuffer buffer = data.duplicate();
+        final String hash = getHash(buffer, name, sha1);
+        return trace(UPLOAD_FILE, () -> transfer(buffer.remaining(), "Upload of " + name, () -> uploadFileOnce(upload, buffer.duplicate(), name, hash)));
+    }
+
+    /**
+     * Uploads an array of bytes to the API completing the upload request.
+     *
+     * @param upload An upload request created with the getUploadURL method
+     * @param data The data which should be uploaded
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2UploadRequest upload, byte[] data, String name, String sha1){
+        return uploadFile(upload, ByteBuffer.wrap(data), name, sha1);
+    }
+
+    /**
+     * Uploads the remaining bytes of a ByteBuffer to the API. Failed uploads are retried according to the
+     * retry policy, with a new upload URL for every attempt. The position of the buffer is not changed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param data Buffer containing the data which should be uploaded, which may be direct or memory-mapped
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2Session session, B2Bucket bucket, ByteBuffer data, String name, String sha1){
+        final ByteBuffer buffer = data.duplicate();
+        final String hash = getHash(buffer, name, sha1);
+        return trace(UPLOAD_FILE, () -> retry(session, true, "Upload of " + name, () -> uploadFile(getUploadURL(session, bucket), buffer, name, hash)));
+    }
+
+    /**
+     * Uploads an array of bytes to the API. Failed uploads are retried according to the retry policy, with a
+     * new upload URL for every attempt.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param data The data which should be uploaded
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2Session session, B2Bucket bucket, byte[] data, String name, String sha1){
+        return uploadFile(session, bucket, ByteBuffer.wrap(data), name, sha1);
+    }
+
+    /**
+     * Gets the SHA1 hash which should be sent with the contents of a buffer, checking a supplied hash if
+     * verification is enabled. The position of the buffer is not changed.
+     */
+    String getHash(ByteBuffer buffer, String name, String sha1){
+        if(sha1 != null && !verifySuppliedHashes) return sha1.toLowerCase(Locale.ROOT);
+
+        MessageDigest md = newSHA1();
+        md.update(buffer.duplicate());
+        String hash = toHex(md.digest());
+        if(sha1 != null && !hash.equalsIgnoreCase(sha1)){
+            throw new B2APIException("Supplied SHA1 " + sha1 + " does not match the contents of " + name + ", which hash to " + hash);
+        }
+        return hash;
+    }
+
+    private B2File uploadFileOnce(B2UploadRequest upload, ByteBuffer buffer, String name, String hash) throws IOException {
+        long length = buffer.remaining();
+        try(B2Connection connection = openTransfer(upload.getUploadURL(), upload.getAuthorizationToken())){
+            connection.setHeader("Content-Type", "b2/x-auto");
+            connection.setHeader("X-Bz-File-Name", name);
+            connection.setHeader("X-Bz-Content-Sha1", hash);
+
+            try(OutputStream outputStream = connection.getOutputStream(length)){
+                if(buffer.hasArray()){
+                    outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                }else{
+                    //Direct and mapped buffers have no array, so are copied out a chunk at a time
+                    byte[] chunk = new byte[(int) Math.min(BUFFER_SIZE, length)];
+                    while(buffer.hasRemaining()){
+                        int count = Math.min(chunk.length, buffer.remaining());
+                        buffer.get(chunk, 0, count);
+                        outputStream.write(chunk, 0, count);
+                    }
+                }
+            }
+
+            JsonFields result = readResponse(connection);
+            B2MetadataCache cache = metadataCache;
+            if(cache != null) cache.removeName(upload.getBucket(), name);
+            return new B2File(name, result.getString("contentType"), result.getString("fileId"), length,
+                    result.optLong("uploadTimestamp", System.currentTimeMillis()), hash);
+        }
+    }
+
+    /**
+     * Uploads a file to the API, automatically using the large file API with several parallel connections
+     * when the file is above the threshold of the default B2LargeFileUploader. Failed uploads are retried
+     * according to the retry policy, with a new upload URL for every attempt.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param file The file which should be uploaded
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2Session session, B2Bucket bucket, File file, String name){
+        if(largeFileUploader.isLargeFile(file)) return largeFileUploader.upload(session, bucket, file, name);
+        return trace(UPLOAD_FILE, () -> retry(session, true, "Upload of " + name, () -> uploadFile(getUploadURL(session, bucket), file, name)));
+    }
+
+    /**
+     * Gets the uploader used by the uploadFile method for files above its threshold, which can be used to
+     * change the threshold, part size and number of threads.
+     *
+     * @return The default B2LargeFileUploader
+     */
+    public B2LargeFileUploader getLargeFileUploader(){
+        return largeFileUploader;
+    }
+
+    /**
+     * Starts a large file, which will be uploaded in parts using the uploadPart method.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param name The name which should identify the file
+     * @return A B2File representing the unfinished large file
+     */
+    public B2File startLargeFile(B2Session session, B2Bucket bucket, String name){
+        return startLargeFile(session, bucket, name, "b2/x-auto", null);
+    }
+
+    /**
+     * Starts a large file with the given metadata, which will be uploaded in parts using the uploadPart method
+     * or copied in parts using the copyPart method.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the file will be stored
+     * @param name The name which should identify the file
+     * @param contentType The MIME type of the file, or b2/x-auto to choose it from the name
+     * @param fileInfo Custom information stored with the file, or null for none
+     * @return A B2File representing the unfinished large file
+     */
+    public B2File startLargeFile(B2Session session, B2Bucket bucket, String name, String contentType, Map<String, String> fileInfo){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("bucketId").value(bucket.getID())
+                .name("fileName").value(name)
+                .name("contentType").value(contentType);
+        writeFileInfo(parameters, fileInfo);
+        parameters.endObject();
+        JsonFields result = call(session, "b2_start_large_file", parameters);
+        return new B2File(name, result.getString("contentType"), result.getString("fileId"), 0, result.optLong("uploadTimestamp", 0));
+    }
+
+    /**
+     * Prepares the API for uploading parts of a large file. Each thread uploading parts requires its own URL.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     * @return A B2UploadPartRequest instance representing where parts should be uploaded
+     */
+    public B2UploadPartRequest getUploadPartURL(B2Session session, B2File largeFile){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("fileId").value(largeFile.getID())
+                .endObject();
+        JsonFields result = call(session, "b2_get_upload_part_url", parameters);
+        return new B2UploadPartRequest(largeFile, result.getString("uploadUrl"), result.getString("authorizationToken"));
+    }
+
+    /**
+     * Uploads a range of a local file as one part of a large file. The range is streamed and hashed in a
+     * single pass, so only a small fixed size buffer is held in memory regardless of the part size.
+     *
+     * @param upload An upload request created with the getUploadPartURL method
+     * @param partNumber The number of the part, starting at 1
+     * @param file The local file containing the part
+     * @param offset Position within the local file where the part starts
+     * @param length Number of bytes in the part
+     * @return The SHA1 hash of the part, which is required to finish the large file
+     */
+    public String uploadPart(B2UploadPartRequest upload, int partNumber, File file, long offset, long length){
+        return trace(UPLOAD_PART, () -> transfer(length, "Upload of part " + partNumber + " of " + upload.getFile().getName(),
+                () -> uploadPartOnce(upload, partNumber, file, offset, length)));
+    }
+
+    private String uploadPartOnce(B2UploadPartRequest upload, int partNumber, File file, long offset, long length) throws IOException {
+        try(FileChannel channel = openLocal(file);
+            B2Connection connection = openTransfer(upload.getUploadURL(), upload.getAuthorizationToken())){
+            channel.position(offset);
+            connection.setHeader("X-Bz-Part-Number", Integer.toString(partNumber));
+            connection.setHeader("X-Bz-Content-Sha1", HASH_AT_END);
+
+            String hash;
+            try(OutputStream outputStream = connection.getOutputStream(length + SHA1_HEX_LENGTH)){
+                hash = writeWithHash(channel, length, outputStream);
+            }
+
+            readResponse(connection);
+            return hash;
+        }
+    }
+
+    /**
+     * Finishes a large file once all of its parts have been uploaded.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     * @param partHashes The SHA1 hashes of every part, in order of part number
+     * @return A B2File instance representing the completed file
+     */
+    public B2File finishLargeFile(B2Session session, B2File largeFile, List<String> partHashes){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("fileId").value(largeFile.getID())
+                .name("partSha1Array").beginArray();
+        for(String hash : partHashes) parameters.value(hash);
+        parameters.endArray().endObject();
+        JsonFields result = call(session, "b2_finish_large_file", parameters);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null) cache.removeName(result.getString("fileName"));
+        return new B2File(result.getString("fileName"), result.getString("contentType"), result.getString("fileId"),
+                result.getLong("contentLength"), result.optLong("uploadTimestamp", System.currentTimeMillis()));
+    }
+
+    /**
+     * Lists the parts of an unfinished large file which have been uploaded so far, following every page of
+     * the b2_list_parts response.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     * @return The uploaded parts, in order of part number
+     */
+    public List<B2Part> listParts(B2Session session, B2File largeFile){
+        List<B2Part> parts = new ArrayList<B2Part>();
+        Integer startPartNumber = 1;
+        while(startPartNumber != null){
+            JsonWriter parameters = new JsonWriter().beginObject()
+                    .name("fileId").value(largeFile.getID())
+                    .name("startPartNumber").value(startPartNumber)
+                    .name("maxPartCount").value(1000)
+                    .endObject();
+            PartPage page = call(session, "b2_list_parts", parameters, PART_PAGE);
+            parts.addAll(page.parts);
+            startPartNumber = page.nextPartNumber;
+        }
+        return parts;
+    }
+
+    /**
+     * Cancels an unfinished large file, deleting any parts which have already been uploaded.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param largeFile A large file started with the startLargeFile method
+     */
+    public void cancelLargeFile(B2Session session, B2File largeFile){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("fileId").value(largeFile.getID())
+                .endObject();
+        call(session, "b2_cancel_large_file", parameters);
+    }
+
+    /**
+     * Copies a file within B2, without its contents passing through this client. The copy is stored in the
+     * same bucket with the same metadata. Files over 5GB must be copied in parts, using a B2Copier.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param source The file which should be copied
+     * @param name The name of the copy
+     * @return A B2File representing the copy
+     */
+    public B2File copyFile(B2Session session, B2File source, String name){
+        return copyFile(session, source, null, name, 0, -1, null, null);
+    }
+
+    /**
+     * Copies a file, or a range of it, within B2 using b2_copy_file, without its contents passing through this
+     * client. Files over 5GB must be copied in parts, using a B2Copier.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param source The file which should be copied
+     * @param bucket The B2Bucket the copy should be stored in, or null for the bucket of the source
+     * @param name The name of the copy
+     * @param offset Position within the source of the first byte to copy
+     * @param length Number of bytes to copy, or -1 for the rest of the file
+     * @param contentType The MIME type of the copy, or null to keep the metadata of the source
+     * @param fileInfo Custom information stored with the copy in place of that of the source, which is only
+     *                 used when a content type is given
+     * @return A B2File representing the copy
+     */
+    public B2File copyFile(B2Session session, B2File source, B2Bucket bucket, String name, long offset, long length,
+                           String contentType, Map<String, String> fileInfo){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("sourceFileId").value(source.getID())
+                .name("fileName").value(name);
+        if(bucket != null) parameters.name("destinationBucketId").value(bucket.getID());
+        String range = getRange(source, offset, length);
+        if(range != null) parameters.name("range").value(range);
+        if(contentType != null){
+            parameters.name("metadataDirective").value("REPLACE").name("contentType").value(contentType);
+            writeFileInfo(parameters, fileInfo);
+        }else{
+            parameters.name("metadataDirective").value("COPY");
+        }
+        parameters.endObject();
+        B2File copy = call(session, "b2_copy_file", parameters, B2Client::readFile);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null){
+            if(bucket != null) cache.removeName(bucket, name);
+            else cache.removeName(name);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies a range of an existing file as one part of a large file, using b2_copy_part.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param source The file which the part should be copied from
+     * @param largeFile A large file started with the startLargeFile method
+     * @param partNumber The number of the part, starting at 1
+     * @param offset Position within the source of the first byte of the part
+     * @param length Number of bytes in the part
+     * @return The SHA1 hash of the part, which is required to finish the large file
+     */
+    public String copyPart(B2Session session, B2File source, B2File largeFile, int partNumber, long offset, long length){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("sourceFileId").value(source.getID())
+                .name("largeFileId").value(largeFile.getID())
+                .name("partNumber").value(partNumber);
+        String range = getRange(source, offset, length);
+        if(range != null) parameters.name("range").value(range);
+        parameters.endObject();
+        return call(session, "b2_copy_part", parameters).getString("contentSha1");
+    }
+
+    /**
+     * Gets the value of the range parameter of a copy.
+     *
+     * @return A range such as "bytes=0-99", or null if the whole source is copied
+     */
+    private static String getRange(B2File source, long offset, long length){
+        if(offset < 0 || length < -1) throw new IllegalArgumentException("Invalid range of " + source.getName());
+        if(offset == 0 && (length == -1 || length == source.getSize())) return null;
+        long end = length == -1 ? source.getSize() : offset + length;
+        return "bytes=" + offset + "-" + (end - 1);
+    }
+
+    /**
+     * Writes the fileInfo member of a request, if there is any file information.
+     */
+    private static void writeFileInfo(JsonWriter parameters, Map<String, String> fileInfo){
+        if(fileInfo == null || fileInfo.isEmpty()) return;
+        parameters.name("fileInfo").beginObject();
+        for(Map.Entry<String, String> entry : fileInfo.entrySet()) parameters.name(entry.getKey()).value(entry.getValue());
+        parameters.endObject();
+    }
+
+    /**
+     * Downloads a file from the API, automatically fetching ranges of the file over several parallel connections
+     * when the file is above the threshold of the default B2ParallelDownloader. A dropped connection is continued
+     * from where it stopped, and the length and SHA1 hash of the result are checked.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param destination Where the file should be downloaded to
+     */
+    public void downloadFile(B2Session session, B2File file, File destination){
+        if(parallelDownloader.isLargeFile(file)){
+            parallelDownloader.download(session, file, destination);
+            return;
+        }
+
+        try(FileChannel channel = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            MessageDigest digest = newSHA1();
+            String hash = download(session, file, 0, -1, digest, (bytes, length) -> writeFully(channel, bytes, length));
+            checkHash(file, hash, digest);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to write " + destination.getPath(), ex);
+        }
+    }
+
+    /**
+     * Continues a download into a destination which already holds the start of the file, such as one left
+     * behind by a process which stopped part way through. Only the rest of the file is requested, and the
+     * SHA1 hash of the whole result is checked, so a destination which does not hold the start of this file
+     * is reported rather than silently completed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param destination Where the file should be downloaded to, which is created if it does not exist
+     */
+    public void resumeDownload(B2Session session, B2File file, File destination){
+        try(FileChannel channel = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            long existing = channel.size();
+            if(existing > file.getSize()){
+                channel.truncate(0);
+                existing = 0;
+            }
+
+            //The hash covers the whole file, so the bytes already downloaded are read back first
+            MessageDigest digest = newSHA1();
+            update(digest, channel, 0, existing);
+            channel.position(existing);
+            String hash = download(session, file, existing, -1, digest, (bytes, length) -> writeFully(channel, bytes, length));
+            checkHash(file, hash, digest);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to write " + destination.getPath(), ex);
+        }
+    }
+
+    /**
+     * Downloads a file from the API, streaming it into an OutputStream. A dropped connection is continued from
+     * where it stopped, so nothing is written twice, and the SHA1 hash is checked once the file is complete.
+     * The stream is not closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param outputStream Where the file should be written to
+     * @return Number of bytes written
+     */
+    public long downloadFile(B2Session session, B2File file, OutputStream outputStream){
+        final long[] written = new long[1];
+        MessageDigest digest = newSHA1();
+        String hash = download(session, file, 0, -1, digest, (bytes, length) -> {
+            outputStream.write(bytes, 0, length);
+            written[0] += length;
+        });
+        checkHash(file, hash, digest);
+        return written[0];
+    }
+
+    /**
+     * Downloads a file from the API, streaming it into a channel. A dropped connection is continued from where
+     * it stopped, so nothing is written twice, and the SHA1 hash is checked once the file is complete.
+     * The channel is not closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param channel Where the file should be written to, starting at its current position
+     * @return Number of bytes written
+     */
+    public long downloadFile(B2Session session, B2File file, WritableByteChannel channel){
+        final long[] written = new long[1];
+        MessageDigest digest = newSHA1();
+        String hash = download(session, file, 0, -1, digest, (bytes, length) -> {
+            writeFully(channel, bytes, length);
+            written[0] += length;
+        });
+        checkHash(file, hash, digest);
+        return written[0];
+    }
+
+    /**
+     * Downloads a small file from the API into a buffer, starting at the position of the buffer and leaving
+     * the position after the last byte. A dropped connection is continued from where it stopped, and the
+     * SHA1 hash is checked once the file is complete.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param buffer Buffer with enough space remaining for the whole file
+     * @return Number of bytes written into the buffer
+     */
+    public int downloadFile(B2Session session, B2File file, ByteBuffer buffer){
+        if(file.getSize() > buffer.remaining()){
+            throw new B2APIException(file.getName() + " is " + file.getSize() + " bytes, but the buffer only has " + buffer.remaining() + " remaining");
+        }
+
+        int start = buffer.position();
+        MessageDigest digest = newSHA1();
+        String hash = download(session, file, 0, -1, digest, (bytes, length) -> {
+            if(length > buffer.remaining()) throw new B2APIException(file.getName() + " is larger than the space remaining in the buffer");
+            buffer.put(bytes, 0, length);
+        });
+        checkHash(file, hash, digest);
+        return buffer.position() - start;
+    }
+
+    /**
+     * Opens a stream of the contents of a file, for passing a file on without storing it. The request is
+     * retried until the server starts sending the file, and a connection which drops part way through is
+     * continued from where it stopped. Reaching the end of the stream checks the length and SHA1 hash.
+     * The stream holds one of the transfer permits of this client until it is closed, so must always be closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @return An InputStream of the contents of the file
+     */
+    public InputStream openDownload(B2Session session, B2File file){
+        B2ConcurrencyLimiter.Permit permit = transferLimiter.acquire();
+        try {
+            return new B2DownloadStream(this, session, file, permit);
+        } catch (B2APIException ex) {
+            permit.failure(ex);
+            permit.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the downloader used by the downloadFile method for files above its threshold, which can be used to
+     * change the threshold, range size and number of threads.
+     *
+     * @return The default B2ParallelDownloader
+     */
+    public B2ParallelDownloader getParallelDownloader(){
+        return parallelDownloader;
+    }
+
+    /**
+     * Sets the policy which decides which failed requests are retried, and how long to wait between attempts.
+     *
+     * @param retryPolicy The new policy, or B2RetryPolicy.NONE to send every request once
+     */
+    public void setRetryPolicy(B2RetryPolicy retryPolicy){
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Gets the policy which decides which failed requests are retried.
+     *
+     * @return The current B2RetryPolicy
+     */
+    public B2RetryPolicy getRetryPolicy(){
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the limiter which adapts how many uploads and downloads this client runs at once. Every file upload,
+     * large file part and download range waits for a permit, whichever thread or uploader it comes from.
+     *
+     * @param transferLimiter The new limiter
+     */
+    public void setTransferLimiter(B2ConcurrencyLimiter transferLimiter){
+        this.transferLimiter = transferLimiter;
+    }
+
+    /**
+     * Gets the limiter which adapts how many uploads and downloads this client runs at once, which can be used
+     * to check the current limit and the number of transfers waiting.
+     *
+     * @return The current B2ConcurrencyLimiter
+     */
+    public B2ConcurrencyLimiter getTransferLimiter(){
+        return transferLimiter;
+    }
+
+    /**
+     * Sets the cache used by getFile, getFileByName and getBucket. Entries are removed when this client
+     * deletes or changes the file or bucket, but changes made by other clients are only seen once entries expire.
+     * Entries are shared by every session, so a client with a cache must only be used with one application key.
+     *
+     * @param metadataCache The cache, or null to send a request for every lookup
+     */
+    public void setMetadataCache(B2MetadataCache metadataCache){
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Gets the cache used by getFile, getFileByName and getBucket, which can be used to check hit and miss counts.
+     *
+     * @return The current B2MetadataCache, or null if caching is disabled
+     */
+    public B2MetadataCache getMetadataCache(){
+        return metadataCache;
+    }
+
+    /**
+     * Sets the instrumentation which every API call, upload and download is reported to once it finishes.
+     *
+     * @param instrumentation The instrumentation, such as a B2MetricsRecorder, or B2Instrumentation.NONE
+     */
+    public void setInstrumentation(B2Instrumentation instrumentation){
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Gets the instrumentation which calls are reported to.
+     *
+     * @return The instrumentation, which is B2Instrumentation.NONE by default
+     */
+    public B2Instrumentation getInstrumentation(){
+        return instrumentation;
+    }
+
+    /**
+     * Sets the scheduler which limits the bandwidth of every upload and download made by this client. Clients
+     * which share a link should share a scheduler, so that their transfers are limited together.
+     *
+     * @param bandwidthScheduler The scheduler, or null to transfer as fast as the connection allows
+     */
+    public void setBandwidthScheduler(B2BandwidthScheduler bandwidthScheduler){
+        this.bandwidthScheduler = bandwidthScheduler;
+    }
+
+    /**
+     * Gets the scheduler which limits the bandwidth of uploads and downloads.
+     *
+     * @return The current B2BandwidthScheduler, or null if bandwidth is not limited
+     */
+    public B2BandwidthScheduler getBandwidthScheduler(){
+        return bandwidthScheduler;
+    }
+
+    /**
+     * Sets the priority class which uploads and downloads made by this client share bandwidth as. To run
+     * transfers of different classes, such as restores alongside backups, use one client for each class.
+     * Transfers which have already started keep the class they started with.
+     *
+     * @param transferPriority The priority class, which is NORMAL by default
+     */
+    public void setTransferPriority(B2TransferPriority transferPriority){
+        this.transferPriority = transferPriority;
+    }
+
+    /**
+     * Gets the priority class which uploads and downloads made by this client share bandwidth as.
+     *
+     * @return The current B2TransferPriority
+     */
+    public B2TransferPriority getTransferPriority(){
+        return transferPriority;
+    }
+
+    /**
+     * Sets whether SHA1 hashes supplied with in-memory uploads are checked against the data before it is sent.
+     * B2 rejects an upload whose hash does not match either way, but checking first avoids sending the data.
+     *
+     * @param verifySuppliedHashes True to hash the data even when a hash is supplied
+     */
+    public void setVerifySuppliedHashes(boolean verifySuppliedHashes){
+        this.verifySuppliedHashes = verifySuppliedHashes;
+    }
+
+    /**
+     * Checks whether SHA1 hashes supplied with in-memory uploads are checked against the data.
+     *
+     * @return True if supplied hashes are verified, which is false by default
+     */
+    public boolean isVerifySuppliedHashes(){
+        return verifySuppliedHashes;
+    }
+
+    /**
+     * Gets the number of lookups which shared the response of an identical request already in flight,
+     * instead of sending their own. This covers getFile, getFileByName, getBucket and authorization.
+     *
+     * @return Number of requests which were not sent because of coalescing
+     */
+    public long getCoalescedCount(){
+        return fileFlights.getCoalescedCount() + bucketFlights.getCoalescedCount() + authorizationFlights.getCoalescedCount();
+    }
+
+    /**
+     * Downloads a range of a file from the API, writing it directly into a FileChannel at the same position
+     * as it has within the file. Positional writes are used, so several ranges can be written at once.
+     * A dropped connection is continued from the first byte of the range which was not received.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param offset Position within the file of the first byte to download
+     * @param length Number of bytes which should be downloaded
+     * @param channel Channel which the range will be written to
+     * @return The SHA1 hash of the whole file reported by the server, or null if the server does not know it
+     */
+    public String downloadRange(B2Session session, B2File file, long offset, long length, FileChannel channel){
+        final long[] position = {offset};
+        return download(session, file, offset, offset + length, null, (bytes, count) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, count);
+            while(buffer.hasRemaining()) position[0] += channel.write(buffer, position[0]);
+        });
+    }
+
+    /**
+     * Reads the SHA1 hash of a whole file from the headers of a download response. Large files do not have
+     * a hash unless one was supplied as the large_file_sha1 file info when the upload was started.
+     *
+     * @param connection Connection which a download response has been received on
+     * @return The SHA1 hash reported by the server, or null if the server does not know it
+     */
+    static String getContentHash(B2Connection connection) throws IOException {
+        String hash = normalizeHash(connection.getHeader("X-Bz-Content-Sha1"));
+        return hash != null ? hash : normalizeHash(connection.getHeader("X-Bz-Info-large_file_sha1"));
+    }
+
+    /**
+     * Deletes a B2File using the API, with the given ID
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The B2File instance which should be deleted
+     */
+    public void deleteFile(B2Session session, B2File file){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("fileName").value(file.getName())
+                .name("fileId").value(file.getID())
+                .endObject();
+        call(session, "b2_delete_file_version", parameters);
+
+        B2MetadataCache cache = metadataCache;
+        if(cache != null) cache.removeFile(file);
+    }
+
+    /**
+     * Fetches a file and instantiates a new B2File, using the metadata cache if one is set.
+     * Concurrent lookups of the same file share a single request.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param fileID The ID of the file which should be fetched
+     * @return A B2File instance
+     */
+    public B2File getFile(B2Session session, String fileID){
+        final B2MetadataCache cache = metadataCache;
+        B2File file = cache != null ? cache.getFile(fileID) : null;
+        if(file != null) return file;
+
+        //Keys include the token, since another key on the same account may not be allowed to see the file
+        return fileFlights.execute(session.getAuthToken() + "/id/" + fileID, () -> {
+            JsonWriter parameters = new JsonWriter().beginObject()
+                    .name("fileId").value(fileID)
+                    .endObject();
+            B2File fetched = call(session, "b2_get_file_info", parameters, B2Client::readFile);
+            if(cache != null) cache.putFile(fetched);
+            return fetched;
+        });
+    }
+
+    /**
+     * Finds the latest version of a file by name, using the metadata cache if one is set.
+     * Concurrent lookups of the same name share a single request.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     * @param name The name of the file
+     * @return The file, or null if the bucket has no file with the name
+     */
+    public B2File getFileByName(B2Session session, B2Bucket bucket, String name){
+        final B2MetadataCache cache = metadataCache;
+        B2File file = cache != null ? cache.getFile(bucket, name) : null;
+        if(file != null) return file;
+
+        return fileFlights.execute(session.getAuthToken() + "/name/" + bucket.getID() + '/' + name, () -> {
+            List<B2File> files = listFileNames(session, bucket, name, 1, null, null).getFiles();
+            if(files.isEmpty() || !files.get(0).getName().equals(name)) return null;
+            if(cache != null) cache.putFile(bucket, files.get(0));
+            return files.get(0);
+        });
+    }
+
+    /**
+     * Lists all files using the API, sending one separate request per 1000 files
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     */
+    public List<B2File> listFiles(B2Session session, B2Bucket bucket){
+        List<B2File> files = new ArrayList<B2File>();
+        for(B2File file : new B2FileLister(this, session, bucket)) files.add(file);
+        return files;
+    }
+
+    /**
+     * Lists one page of file names using the API. Most callers should use a B2FileLister instead, which
+     * fetches further pages as they are needed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     * @param startFileName The first file name to return, or null to start at the beginning of the bucket
+     * @param maxFileCount Largest number of files to return, up to 10000
+     * @param prefix Only return files whose names start with this prefix, or null for all files
+     * @param delimiter Return names up to and including this delimiter as folders, or null for a flat listing
+     * @return A B2FilePage containing the files and the name which the next page starts at
+     */
+    public B2FilePage listFileNames(B2Session session, B2Bucket bucket, String startFileName, int maxFileCount,
+                                    String prefix, String delimiter){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("bucketId").value(bucket.getID())
+                .name("maxFileCount").value(maxFileCount);
+        if(startFileName != null) parameters.name("startFileName").value(startFileName);
+        if(prefix != null) parameters.name("prefix").value(prefix);
+        if(delimiter != null) parameters.name("delimiter").value(delimiter);
+        parameters.endObject();
+        return call(session, "b2_list_file_names", parameters, FILE_PAGE);
+    }
+
+    /**
+     * Lists one page of file versions using the API, newest first for each name. Most callers should use a
+     * B2FileLister with setAllVersions instead, which fetches further pages as they are needed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be searched
+     * @param startFileName The first file name to return, or null to start at the beginning of the bucket
+     * @param startFileID The first version of startFileName to return, or null for its newest version
+     * @param maxFileCount Largest number of versions to return, up to 10000
+     * @param prefix Only return files whose names start with this prefix, or null for all files
+     * @param delimiter Return names up to and including this delimiter as folders, or null for a flat listing
+     * @return A B2FilePage containing the versions and the name and ID which the next page starts at
+     */
+    public B2FilePage listFileVersions(B2Session session, B2Bucket bucket, String startFileName, String startFileID,
+                                       int maxFileCount, String prefix, String delimiter){
+        JsonWriter parameters = new JsonWriter().beginObject()
+                .name("bucketId").value(bucket.getID())
+                .name("maxFileCount").value(maxFileCount);
+        if(startFileName != null) parameters.name("startFileName").value(startFileName);
+        if(startFileName != null && startFileID != null) parameters.name("startFileId").value(startFileID);
+        if(prefix != null) parameters.name("prefix").value(prefix);
+        if(delimiter != null) parameters.name("delimiter").value(delimiter);
+        parameters.endObject();
+        return call(session, "b2_list_file_versions", parameters, FILE_PAGE);
+    }
+
+    /**
+     * Decodes a file object returned by the listing and file info methods.
+     *
+     * @param reader Reader positioned at the start of the file object
+     * @return A B2File instance
+     * @throws IOException Thrown if the response could not be read
+     */
+    static B2File readFile(JsonReader reader) throws IOException {
+        String name = null, contentType = "Unknown", ID = null, contentSha1 = null, largeFileSha1 = null;
+        long size = 0, uploadTimestamp = 0;
+
+        reader.beginObject();
+        while(reader.hasNext()){
+            switch(reader.nextName()){
+                case "fileName": name = reader.nextString(); break;
+                case "contentType": contentType = reader.nextString(); break;
+                //Folders returned when using a delimiter have a null ID
+                case "fileId": ID = reader.nextString(); break;
+                case "size": case "contentLength": size = reader.nextLong(); break;
+                case "uploadTimestamp": uploadTimestamp = reader.nextLong(); break;
+                case "contentSha1": contentSha1 = normalizeHash(reader.nextString()); break;
+                case "fileInfo":
+                    if(reader.peek() != JsonReader.Token.BEGIN_OBJECT){
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while(reader.hasNext()){
+                        if(reader.nextName().equals("large_file_sha1")) largeFileSha1 = normalizeHash(reader.nextString());
+                        else reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new B2File(name, contentType, ID, size, uploadTimestamp, contentSha1 != null ? contentSha1 : largeFileSha1);
+    }
+
+    /**
+     * Converts a SHA1 hash reported by the server into plain hex.
+     *
+     * @param hash The reported hash, which may be "none" or have an "unverified:" prefix
+     * @return The hash in hex, or null if the server does not know it
+     */
+    private static String normalizeHash(String hash){
+        if(hash == null || hash.equals("none")) return null;
+        //Files uploaded with hex_digits_at_end may report their hash as unverified
+        if(hash.startsWith("unverified:")) hash = hash.substring("unverified:".length());
+        return hash;
+    }
+
+    /**
+     * One page of a b2_list_parts response.
+     */
+    private static class PartPage {
+
+        private final List<B2Part> parts = new ArrayList<B2Part>();
+        private Integer nextPartNumber;
+
+    }
+
+    /**
+     * Decodes a b2_list_parts response into B2Part instances.
+     */
+    private static final JsonDecoder<PartPage> PART_PAGE = reader -> {
+        PartPage page = new PartPage();
+        reader.beginObject();
+        while(reader.hasNext()){
+            switch(reader.nextName()){
+                case "parts":
+                    reader.beginArray();
+                    while(reader.hasNext()) page.parts.add(readPart(reader));
+                    reader.endArray();
+                    break;
+                case "nextPartNumber":
+                    if(reader.peek() == JsonReader.Token.NULL) reader.nextNull();
+                    else page.nextPartNumber = reader.nextInt();
+                    break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    };
+
+    private static B2Part readPart(JsonReader reader) throws IOException {
+        int partNumber = 0;
+        long contentLength = 0;
+        String contentSha1 = null;
+
+        reader.beginObject();
+        while(reader.hasNext()){
+            switch(reader.nextName()){
+                case "partNumber": partNumber = reader.nextInt(); break;
+                case "contentLength": contentLength = reader.nextLong(); break;
+                case "contentSha1": contentSha1 = normalizeHash(reader.nextString()); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new B2Part(partNumber, contentLength, contentSha1);
+    }
+
+    /**
+     * Decodes the files array of a b2_list_file_names or b2_list_file_versions response into B2File instances,
+     * without holding the rest of the response in memory.
+     */
+    static final JsonDecoder<B2FilePage> FILE_PAGE = reader -> {
+        List<B2File> files = new ArrayList<B2File>();
+        String nextFileName = null, nextFileID = null;
+
+        reader.beginObject();
+        while(reader.hasNext()){
+            switch(reader.nextName()){
+                case "files":
+                    reader.beginArray();
+                    while(reader.hasNext()) files.add(readFile(reader));
+                    reader.endArray();
+                    break;
+                case "nextFileName": nextFileName = reader.nextString(); break;
+                case "nextFileId": nextFileID = reader.nextString(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new B2FilePage(files, nextFileName, nextFileID);
+    };
+
+    /**
+     * Decodes the buckets array of a b2_list_buckets response into B2Bucket instances.
+     */
+    private static final JsonDecoder<List<B2Bucket>> BUCKET_LIST = reader -> {
+        List<B2Bucket> buckets = new ArrayList<B2Bucket>();
+
+        reader.beginObject();
+        while(reader.hasNext()){
+            if(!reader.nextName().equals("buckets")){
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while(reader.hasNext()){
+                JsonFields bucket = JsonFields.read(reader);
+                buckets.add(new B2Bucket(
+                        bucket.getString("bucketName"),
+                        bucket.getString("bucketId"),
+                        BucketType.getByIdentifier(bucket.getString("bucketType")))
+                );
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return buckets;
+    };
+
+}
\ No newline at end of file
@@ -0,0 +1,255 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of transfers in flight at once, adapting the limit to how B2 responds (additive increase,
+ * multiplicative decrease). While transfers succeed quickly the limit grows by roughly one for every round of
+ * transfers. It is halved when B2 responds with 429 or 503 or a transfer times out, and cut gently when the
+ * smoothed time taken per byte rises well above the lowest recently seen.
+ * Threads wait for a permit when the limit is reached, so the limit also caps the threads doing I/O.
+ */
+public class B2ConcurrencyLimiter {
+
+    //Fraction of the limit kept after B2 reports that it is overloaded.
+    private static final double OVERLOAD_BACKOFF = 0.5;
+    //Fraction of the limit kept after latency rises above the tolerance.
+    private static final double LATENCY_BACKOFF = 0.9;
+    //Smallest transfer size used when comparing latency, so tiny transfers do not look slow per byte.
+    private static final long MINIMUM_SAMPLE_BYTES = 64 * 1024;
+    //Permit of the transfer running on each thread, so waits inside the transfer can be left out of its latency.
+    private static final ThreadLocal<Permit> CURRENT = new ThreadLocal<Permit>();
+
+    private final int minLimit, maxLimit;
+    private double latencyTolerance = 2.0;
+    private double limit;
+    private int inFlight, waiting;
+    //Smoothed time per byte of recent transfers, so a single slow transfer does not reduce the limit.
+    private double recent = Double.NaN;
+    //Lowest smoothed time per byte, which slowly drifts towards recent values so it can recover from old ones.
+    private double baseline = Double.NaN;
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * Constructs a B2ConcurrencyLimiter which starts at 8 transfers and adapts between 1 and 128.
+     */
+    public B2ConcurrencyLimiter(){
+        this(8, 1, 128);
+    }
+
+    /**
+     * Constructs a B2ConcurrencyLimiter with the given limits.
+     *
+     * @param initialLimit Number of transfers allowed in flight before any have completed
+     * @param minLimit Smallest limit, which must be at least one
+     * @param maxLimit Largest limit
+     */
+    public B2ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit){
+        if(minLimit < 1) throw new IllegalArgumentException("Minimum limit must be at least one");
+        if(maxLimit < minLimit) throw new IllegalArgumentException("Maximum limit must not be below the minimum");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Waits until another transfer is allowed to start.
+     *
+     * @return A permit which must be completed once the transfer has finished
+     * @throws B2APIException Thrown if the thread is interrupted while waiting
+     */
+    public synchronized Permit acquire(){
+        waiting++;
+        try {
+            while(inFlight >= (int) limit) wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new B2APIException("Interrupted while waiting to start a transfer", ex);
+        } finally {
+            waiting--;
+        }
+        inFlight++;
+        return new Permit();
+    }
+
+    private synchronized void onSuccess(Permit permit, long bytes){
+        long latency = Math.max(0, System.nanoTime() - permit.start - permit.excluded.get());
+        double sample = (double) latency / Math.max(bytes, MINIMUM_SAMPLE_BYTES);
+        recent = Double.isNaN(recent) ? sample : recent + (sample - recent) / 5;
+        if(Double.isNaN(baseline) || recent < baseline) baseline = recent;
+        else baseline += (recent - baseline) / 100;
+
+        if(recent > baseline * latencyTolerance) decrease(permit, LATENCY_BACKOFF);
+        //Only grow when the limit is actually being used, so an idle client does not build up a huge limit
+        else if(inFlight >= limit / 2) limit = Math.min(maxLimit, limit + 1 / limit);
+        release();
+    }
+
+    private synchronized void onFailure(Permit permit, B2APIException failure){
+        if(isOverload(failure)) decrease(permit, OVERLOAD_BACKOFF);
+        release();
+    }
+
+    /**
+     * Reduces the limit, unless it has already been reduced since the transfer started. Transfers which were
+     * in flight together usually fail together, and should only count as one signal.
+     */
+    private void decrease(Permit permit, double backoff){
+        if(permit.start - lastDecrease < 0) return;
+        limit = Math.max(minLimit, limit * backoff);
+        lastDecrease = System.nanoTime();
+    }
+
+    private void release(){
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Gets the permit of the transfer running on this thread.
+     *
+     * @return The permit, or null if this thread is not running a transfer
+     */
+    static Permit current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Goes back to the permit which was running before enter was called.
+     *
+     * @param previous The permit returned by enter
+     */
+    static void exit(Permit previous){
+        if(previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+
+    /**
+     * Checks whether a failure means that B2 or the network is overloaded.
+     *
+     * @param failure The exception which caused a transfer to fail
+     * @return True for 408, 429 and 503 responses, and for timeouts
+     */
+    static boolean isOverload(B2APIException failure){
+        switch(failure.getStatusCode()){
+            case 408: case 429: case 503: return true;
+            case 0: return failure.getCause() instanceof SocketTimeoutException;
+            default: return false;
+        }
+    }
+
+    /**
+     * Sets how much slower than usual transfers may become before the limit is reduced.
+     *
+     * @param latencyTolerance Ratio of the smoothed time per byte to its lowest recent value, which must be above 1
+     */
+    public synchronized void setLatencyTolerance(double latencyTolerance){
+        if(latencyTolerance <= 1) throw new IllegalArgumentException("Latency tolerance must be above 1");
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Gets the number of transfers currently allowed in flight at once.
+     *
+     * @return The current limit
+     */
+    public synchronized int getLimit(){
+        return (int) limit;
+    }
+
+    /**
+     * Gets the number of transfers currently in flight.
+     *
+     * @return Number of permits which have not yet been completed
+     */
+    public synchronized int getInFlight(){
+        return inFlight;
+    }
+
+    /**
+     * Gets the number of threads waiting for a permit.
+     *
+     * @return Number of transfers queued behind the limit
+     */
+    public synchronized int getQueueDepth(){
+        return waiting;
+    }
+
+    /**
+     * Permission for a single transfer to run. Exactly one of the completion methods must be called,
+     * and any further calls are ignored.
+     */
+    public class Permit {
+
+        private final long start = System.nanoTime();
+        //Time which was not spent on the transfer itself, which may be added from any thread
+        private final AtomicLong excluded = new AtomicLong();
+        private boolean completed;
+
+        private Permit(){}
+
+        /**
+         * Makes this the permit of the transfer running on this thread.
+         *
+         * @return The permit which was running before, which must be passed to exit
+         */
+        Permit enter(){
+            Permit previous = CURRENT.get();
+            CURRENT.set(this);
+            return previous;
+        }
+
+        /**
+         * Leaves time out of the latency of this transfer, because it was spent waiting for something other
+         * than B2, such as for the caller to read a stream.
+         *
+         * @param nanos Time to leave out, in nanoseconds
+         */
+        public void exclude(long nanos){
+            excluded.addAndGet(nanos);
+        }
+
+        /**
+         * Completes the permit after a successful transfer.
+         *
+         * @param bytes Number of bytes transferred, used to compare the latency of transfers of different sizes
+         */
+        public void success(long bytes){
+            synchronized(B2ConcurrencyLimiter.this){
+                if(completed) return;
+                completed = true;
+                onSuccess(this, bytes);
+            }
+        }
+
+        /**
+         * Completes the permit after a failed transfer.
+         *
+         * @param failure The exception which caused the transfer to fail
+         */
+        public void failure(B2APIException failure){
+            synchronized(B2ConcurrencyLimiter.this){
+                if(completed) return;
+                completed = true;
+                onFailure(this, failure);
+            }
+        }
+
+        /**
+         * Completes the permit without affecting the limit, such as when a transfer fails for a reason
+         * unrelated to load.
+         */
+        public void release(){
+            synchronized(B2ConcurrencyLimiter.this){
+                if(completed) return;
+                completed = true;
+                B2ConcurrencyLimiter.this.release();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,309 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2CopyResult;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies files within B2, so their contents never pass through this client. Files below the threshold are
+ * copied with a single b2_copy_file request, and larger files are copied as a large file whose parts are
+ * copied in parallel with b2_copy_part. Whole prefixes can be copied at once, with files streamed from the
+ * listing one page at a time while a pool of worker threads copies them.
+ */
+public class B2Copier {
+
+    //Largest file which b2_copy_file can copy in one request.
+    public static final long MAXIMUM_COPY_SIZE = 5L * 1000 * 1000 * 1000;
+
+    /**
+     * Receives progress updates while a prefix is being copied. It is called from the worker threads, so
+     * must be thread-safe.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after each file has been copied or has failed.
+         *
+         * @param file The file which was processed
+         * @param copied Number of files copied so far
+         * @param failed Number of files which have failed so far
+         */
+        void onProgress(B2File file, long copied, long failed);
+
+    }
+
+    private final B2Client client;
+    private final B2Session session;
+    private long partSize = 100 * 1000 * 1000, threshold = 200 * 1000 * 1000;
+    private int threads = 16;
+    private String contentType;
+    private Map<String, String> fileInfo;
+    private ProgressListener listener;
+
+    /**
+     * Constructs a B2Copier which keeps the metadata of the files it copies, using 16 threads.
+     *
+     * @param client The B2Client used for all requests
+     * @param session Session authenticated with the API, which will be used as Authorization
+     */
+    public B2Copier(B2Client client, B2Session session){
+        this.client = client;
+        this.session = session;
+    }
+
+    /**
+     * Copies a file, copying its parts in parallel if it is above the threshold.
+     *
+     * @param source The file which should be copied
+     * @param bucket The B2Bucket the copy should be stored in
+     * @param name The name of the copy
+     * @return A B2File representing the copy
+     */
+    public B2File copy(B2File source, B2Bucket bucket, String name){
+        return copy(source, bucket, name, 0, -1);
+    }
+
+    /**
+     * Copies a range of a file, copying its parts in parallel if the range is above the threshold.
+     *
+     * @param source The file which should be copied
+     * @param bucket The B2Bucket the copy should be stored in
+     * @param name The name of the copy
+     * @param offset Position within the source of the first byte to copy
+     * @param length Number of bytes to copy, or -1 for the rest of the file
+     * @return A B2File representing the copy
+     */
+    public B2File copy(B2File source, B2Bucket bucket, String name, long offset, long length){
+        return copy(source, bucket, name, offset, length, threads);
+    }
+
+    private B2File copy(B2File source, B2Bucket bucket, String name, long offset, long length, int partThreads){
+        if(length == -1) length = source.getSize() - offset;
+        //Ranges too large for a single request are always split, even if that means parts smaller than the part size
+        if(length <= MAXIMUM_COPY_SIZE && (length < threshold || length < partSize * 2)){
+            return client.copyFile(session, source, bucket, name, offset, length, contentType, fileInfo);
+        }
+        return copyParts(source, bucket, name, offset, length, getPartSize(length), partThreads);
+    }
+
+    /**
+     * Copies a range of a file as a large file, with its parts copied in parallel. If any part fails, the
+     * large file is cancelled and the exception is rethrown.
+     */
+    private B2File copyParts(final B2File source, B2Bucket bucket, String name, final long offset, final long length,
+                             final long partLength, int partThreads){
+        final B2File largeFile;
+        if(contentType != null){
+            largeFile = client.startLargeFile(session, bucket, name, contentType, fileInfo);
+        }else{
+            //Large files do not copy metadata, so keep what is known about the source
+            boolean whole = offset == 0 && length == source.getSize();
+            Map<String, String> info = whole && source.getContentSha1() != null
+                    ? Collections.singletonMap("large_file_sha1", source.getContentSha1()) : null;
+            largeFile = client.startLargeFile(session, bucket, name, source.getContentType(), info);
+        }
+
+        int partCount = (int) ((length + partLength - 1) / partLength);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(partThreads, partCount));
+        try {
+            List<Future<String>> parts = new ArrayList<Future<String>>();
+            for(int i = 0; i < partCount; i++){
+                final int partNumber = i + 1;
+                final long partOffset = i * partLength;
+                parts.add(executor.submit(() -> client.copyPart(session, source, largeFile, partNumber,
+                        offset + partOffset, Math.min(partLength, length - partOffset))));
+            }
+
+            List<String> partHashes = new ArrayList<String>();
+            for(Future<String> part : parts) partHashes.add(part.get());
+            return client.finishLargeFile(session, largeFile, partHashes);
+        } catch (ExecutionException ex) {
+            cancel(largeFile, executor);
+            if(ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new B2APIException("Failed to copy " + source.getName(), ex.getCause());
+        } catch (InterruptedException ex) {
+            cancel(largeFile, executor);
+            Thread.currentThread().interrupt();
+            throw new B2APIException("Interrupted while copying " + source.getName(), ex);
+        } catch (RuntimeException ex) {
+            cancel(largeFile, executor);
+            throw ex;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void cancel(B2File largeFile, ExecutorService executor){
+        //Stop the other parts first, so no b2_copy_part requests are sent while the large file is being cancelled
+        executor.shutdownNow();
+        try {
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            client.cancelLargeFile(session, largeFile);
+        } catch (B2APIException ignored) {
+            //The original failure is more useful, and unfinished large files are also cleaned up by lifecycle rules
+        }
+    }
+
+    /**
+     * Copies every file with a prefix to another prefix, which may be in another bucket. Only the latest
+     * version of each file is copied. Files are copied in parallel, with the parts of large files copied one
+     * at a time, so the number of requests in flight never exceeds the number of threads.
+     *
+     * @param bucket The B2Bucket containing the files
+     * @param prefix Only copy files whose names start with this prefix, or null for the whole bucket
+     * @param destination The B2Bucket the copies should be stored in
+     * @param destinationPrefix The prefix which replaces the source prefix in the name of each copy, which must not
+     *                          start with the source prefix when copying within a bucket
+     * @return A B2CopyResult describing how many files were copied
+     */
+    public B2CopyResult copyPrefix(B2Bucket bucket, String prefix, B2Bucket destination, String destinationPrefix){
+        final String from = prefix != null ? prefix : "";
+        final String to = destinationPrefix != null ? destinationPrefix : "";
+        //Copies under the source prefix would be listed and copied again, forever
+        if(bucket.getID().equals(destination.getID()) && to.startsWith(from)){
+            throw new IllegalArgumentException("Cannot copy " + bucket.getName() + "/" + from + " into itself");
+        }
+        B2FileLister lister = new B2FileLister(client, session, bucket);
+        lister.setMaxFileCount(B2FileLister.MAXIMUM_FILE_COUNT);
+        lister.setPrefix(prefix);
+
+        final AtomicLong copied = new AtomicLong(), bytes = new AtomicLong(), failedCount = new AtomicLong();
+        final List<B2File> failed = Collections.synchronizedList(new ArrayList<B2File>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //Bound the queue, so listing does not run far ahead of the copies
+        final Semaphore slots = new Semaphore(threads * 4);
+
+        try {
+            for(final B2File file : lister){
+                slots.acquire();
+                executor.execute(() -> {
+                    try {
+                        copy(file, destination, to + file.getName().substring(from.length()), 0, -1, 1);
+                        copied.incrementAndGet();
+                        bytes.addAndGet(file.getSize());
+                    } catch (RuntimeException ex) {
+                        failed.add(file);
+                        failedCount.incrementAndGet();
+                    } finally {
+                        slots.release();
+                    }
+                    if(listener != null) listener.onProgress(file, copied.get(), failedCount.get());
+                });
+            }
+
+            executor.shutdown();
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new B2APIException("Interrupted while copying files in " + bucket.getName(), ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new B2CopyResult(copied.get(), bytes.get(), new ArrayList<B2File>(failed));
+    }
+
+    /**
+     * Picks the size of each part for a range, increasing the configured part size if the range would
+     * otherwise be split into more parts than the API allows, and reducing it if the range would otherwise
+     * be split into fewer than two parts or parts larger than MAXIMUM_COPY_SIZE.
+     */
+    private long getPartSize(long length){
+        long minimum = (length + B2LargeFileUploader.MAXIMUM_PARTS - 1) / B2LargeFileUploader.MAXIMUM_PARTS;
+        //A large file needs at least two parts, and no part can be larger than a single copy
+        long maximum = Math.min(MAXIMUM_COPY_SIZE, (length + 1) / 2);
+        return Math.max(Math.min(partSize, maximum), minimum);
+    }
+
+    /**
+     * Sets the metadata given to every copy, in place of the metadata of the source.
+     *
+     * @param contentType The MIME type of the copies, or null to keep the metadata of each source
+     * @param fileInfo Custom information stored with the copies, or null for none
+     */
+    public void setMetadata(String contentType, Map<String, String> fileInfo){
+        this.contentType = contentType;
+        this.fileInfo = fileInfo;
+    }
+
+    /**
+     * Gets the size of each part copied with b2_copy_part.
+     *
+     * @return Part size in bytes
+     */
+    public long getPartSize(){
+        return partSize;
+    }
+
+    /**
+     * Sets the size of each part copied with b2_copy_part. It is increased automatically for files which
+     * would otherwise need more than MAXIMUM_PARTS parts.
+     *
+     * @param partSize The size of each part, which must be at least MINIMUM_PART_SIZE
+     */
+    public void setPartSize(long partSize){
+        if(partSize < B2LargeFileUploader.MINIMUM_PART_SIZE){
+            throw new IllegalArgumentException("Part size must be at least " + B2LargeFileUploader.MINIMUM_PART_SIZE);
+        }
+        this.partSize = partSize;
+    }
+
+    /**
+     * Gets the size above which files are copied in parts.
+     *
+     * @return Threshold in bytes
+     */
+    public long getThreshold(){
+        return threshold;
+    }
+
+    /**
+     * Sets the size above which files are copied in parts.
+     *
+     * @param threshold Threshold in bytes, which must not be above MAXIMUM_COPY_SIZE
+     */
+    public void setThreshold(long threshold){
+        if(threshold > MAXIMUM_COPY_SIZE) throw new IllegalArgumentException("Files above " + MAXIMUM_COPY_SIZE + " bytes must be copied in parts");
+        this.threshold = threshold;
+    }
+
+    /**
+     * Sets the number of files, or parts of a single large file, which are copied at the same time.
+     *
+     * @param threads The number of worker threads, which must be at least one
+     */
+    public void setThreads(int threads){
+        if(threads < 1) throw new IllegalArgumentException("At least one thread is required");
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the listener which is told about each file as it is copied by copyPrefix.
+     *
+     * @param listener The listener, or null for no progress updates
+     */
+    public void setProgressListener(ProgressListener listener){
+        this.listener = listener;
+    }
+
+}
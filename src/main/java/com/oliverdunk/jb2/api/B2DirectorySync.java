@@ -0,0 +1,214 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+import com.oliverdunk.jb2.models.B2SyncResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mirrors a local directory tree to a bucket, uploading only files which are new or have changed.
+ * The bucket is listed once, and each local file is compared with it on a pool of worker threads. A local
+ * file is only read to compute its hash when a file of the same size is already in the bucket, and hashes
+ * are kept in a B2HashIndex between runs, so unchanged files are never hashed twice.
+ * Files in the bucket which no longer exist locally are left in place.
+ */
+public class B2DirectorySync {
+
+    private final B2Client client;
+    private final B2Session session;
+    private final B2Bucket bucket;
+    private final File directory;
+    private File indexFile;
+    private String prefix = "";
+    private int threads = 8;
+
+    /**
+     * Constructs a B2DirectorySync which uploads a directory to the root of a bucket, without saving hashes.
+     *
+     * @param client The B2Client used for all requests
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket which files will be uploaded to
+     * @param directory The local directory which should be mirrored
+     */
+    public B2DirectorySync(B2Client client, B2Session session, B2Bucket bucket, File directory){
+        this.client = client;
+        this.session = session;
+        this.bucket = bucket;
+        this.directory = directory;
+    }
+
+    /**
+     * Syncs the directory to the bucket, and saves the hash index if an index file has been set.
+     * A failure to upload one file does not stop the others, and is reported in the result.
+     *
+     * @return A B2SyncResult describing which files were uploaded
+     */
+    public B2SyncResult sync(){
+        final B2HashIndex previous = indexFile != null ? B2HashIndex.load(indexFile) : new B2HashIndex();
+        //Only files which still exist are carried over, so the index does not grow forever
+        final B2HashIndex current = new B2HashIndex();
+        final Map<String, B2File> remote = listRemote();
+        final B2UploadPool pool = new B2UploadPool(client, session);
+
+        final List<B2File> uploaded = Collections.synchronizedList(new ArrayList<B2File>());
+        final Map<String, RuntimeException> failures = new ConcurrentHashMap<String, RuntimeException>();
+        final AtomicInteger unchanged = new AtomicInteger(), hashed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        //Bound the queue, so walking millions of files does not queue a task for each of them at once
+        final Semaphore slots = new Semaphore(threads * 4);
+        final Path root = directory.toPath();
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) throws IOException {
+                    if(!attributes.isRegularFile()) return FileVisitResult.CONTINUE;
+                    final String relative = getRelativeName(root, path);
+                    final long size = attributes.size();
+                    final long modified = attributes.lastModifiedTime().toMillis();
+
+                    slots.acquireUninterruptibly();
+                    executor.execute(() -> {
+                        try {
+                            B2File result = syncFile(path.toFile(), relative, size, modified, remote.get(prefix + relative),
+                                    previous, current, pool, hashed);
+                            if(result != null) uploaded.add(result);
+                            else unchanged.incrementAndGet();
+                        } catch (RuntimeException ex) {
+                            //Keep the old hash, so a failed upload does not force the file to be hashed again
+                            current.keep(previous, relative);
+                            failures.put(prefix + relative, ex);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException ex){
+                    current.keep(previous, getRelativeName(root, path));
+                    failures.put(prefix + getRelativeName(root, path), new B2APIException("Failed to read " + path, ex));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            executor.shutdown();
+            while(!executor.awaitTermination(1, TimeUnit.MINUTES));
+
+            //Only save a complete index, since one from an unfinished walk would drop every file not yet visited
+            if(indexFile != null) current.save(indexFile);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to walk " + directory.getPath(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new B2APIException("Interrupted while syncing " + directory.getPath(), ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new B2SyncResult(new ArrayList<B2File>(uploaded), unchanged.get(), hashed.get(), failures);
+    }
+
+    /**
+     * Syncs a single file, uploading it unless the bucket already has a file with the same contents.
+     *
+     * @return The uploaded file, or null if the file was unchanged
+     */
+    private B2File syncFile(File file, String relative, long size, long modified, B2File existing,
+                            B2HashIndex previous, B2HashIndex current, B2UploadPool pool, AtomicInteger hashed){
+        String hash = previous.getHash(relative, size, modified);
+
+        //A different size means the file has changed, without needing to read it
+        if(existing != null && existing.getSize() == size){
+            if(existing.getContentSha1() != null){
+                if(hash == null){
+                    hash = hashFile(file, size);
+                    hashed.incrementAndGet();
+                }
+                current.putHash(relative, size, modified, hash);
+                if(hash.equals(existing.getContentSha1())) return null;
+            }else if(existing.getUploadTimestamp() >= modified){
+                //Large files often have no hash, so fall back to comparing times
+                if(hash != null) current.putHash(relative, size, modified, hash);
+                return null;
+            }
+        }
+
+        String name = prefix + relative;
+        B2File result = client.getLargeFileUploader().isLargeFile(file)
+                ? client.uploadFile(session, bucket, file, name) : pool.uploadFile(bucket, file, name);
+
+        //The upload hashes the file as it is sent, which is only valid if the file did not change meanwhile
+        if(result.getContentSha1() != null && file.length() == size && file.lastModified() == modified){
+            current.putHash(relative, size, modified, result.getContentSha1());
+        }
+        return result;
+    }
+
+    private Map<String, B2File> listRemote(){
+        Map<String, B2File> remote = new HashMap<String, B2File>();
+        B2FileLister lister = new B2FileLister(client, session, bucket);
+        lister.setMaxFileCount(B2FileLister.MAXIMUM_FILE_COUNT);
+        if(!prefix.isEmpty()) lister.setPrefix(prefix);
+        for(B2File file : lister) remote.put(file.getName(), file);
+        return remote;
+    }
+
+    private static String hashFile(File file, long size){
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            return B2Client.getHash(channel, size);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to read " + file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Gets the path of a file relative to the root, using "/" as the separator on every platform.
+     */
+    private static String getRelativeName(Path root, Path path){
+        String relative = root.relativize(path).toString();
+        return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Sets the file which hashes are loaded from before a sync, and saved to afterwards.
+     *
+     * @param indexFile Location of the hash index, or null to hash files again on every sync
+     */
+    public void setIndexFile(File indexFile){
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Sets the prefix added to the name of every file in the bucket, such as "backups/".
+     * Only files with this prefix are listed when comparing the directory with the bucket.
+     *
+     * @param prefix The prefix, or an empty String to sync to the root of the bucket
+     */
+    public void setPrefix(String prefix){
+        this.prefix = prefix == null ? "" : prefix;
+    }
+
+    /**
+     * Sets the number of files which are hashed and uploaded at the same time.
+     *
+     * @param threads The number of worker threads, which must be at least one
+     */
+    public void setThreads(int threads){
+        if(threads < 1) throw new IllegalArgumentException("At least one thread is required");
+        this.threads = threads;
+    }
+
+}
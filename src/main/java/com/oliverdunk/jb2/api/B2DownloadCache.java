@@ -0,0 +1,271 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of downloaded files in a local directory. Files are keyed by ID, and the contents of a
+ * file ID never change in B2, so a cached copy never needs checking against the server. Once the cached files
+ * are larger than the byte budget, the least recently used are deleted. Hits are served with
+ * FileChannel.transferTo, and concurrent misses for the same file share a single download.
+ */
+public class B2DownloadCache {
+
+    //Suffix of files which are still being downloaded.
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final B2Client client;
+    private final File directory;
+    private final long maxBytes;
+    //Size of each cached file by ID, in order of use, guarded by this cache.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size;
+    private final B2SingleFlight<String, File> downloads = new B2SingleFlight<String, File>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Constructs a B2DownloadCache, keeping any files already cached in the directory. Files left part way
+     * through a download are deleted.
+     *
+     * @param client The B2Client used to download files which are not cached
+     * @param directory Directory which cached files are stored in, which is created if it does not exist
+     * @param maxBytes Total size of cached files above which the least recently used are deleted
+     */
+    public B2DownloadCache(B2Client client, File directory, long maxBytes){
+        this.client = client;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new B2APIException("Failed to create cache directory " + directory.getPath());
+        }
+
+        File[] cached = directory.listFiles();
+        if(cached == null) return;
+        //Modification times are updated on every hit, so approximate the order of use from before a restart
+        Arrays.sort(cached, Comparator.comparingLong(File::lastModified));
+        for(File file : cached){
+            if(file.getName().endsWith(PARTIAL_SUFFIX)) file.delete();
+            else if(file.isFile()) add(file.getName(), file.length());
+        }
+    }
+
+    /**
+     * Writes a file into a channel, downloading it into the cache first if it is not already cached.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param channel Where the file should be written to, starting at its current position
+     * @return Number of bytes written
+     */
+    public long downloadFile(B2Session session, B2File file, WritableByteChannel channel){
+        //Files which could never fit are streamed straight through instead of evicting everything else
+        if(file.getSize() > maxBytes) return client.downloadFile(session, file, channel);
+
+        try(FileChannel cached = open(session, file)){
+            long length = cached.size(), position = 0;
+            while(position < length) position += cached.transferTo(position, length - position, channel);
+            return length;
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to read cached copy of " + file.getName(), ex);
+        }
+    }
+
+    /**
+     * Writes a file into an OutputStream, downloading it into the cache first if it is not already cached.
+     * The stream is not closed.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param outputStream Where the file should be written to
+     * @return Number of bytes written
+     */
+    public long downloadFile(B2Session session, B2File file, OutputStream outputStream){
+        return downloadFile(session, file, Channels.newChannel(outputStream));
+    }
+
+    /**
+     * Copies a file to a destination, downloading it into the cache first if it is not already cached.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param destination Where the file should be copied to
+     */
+    public void downloadFile(B2Session session, B2File file, File destination){
+        try(FileChannel channel = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            downloadFile(session, file, channel);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to write " + destination.getPath(), ex);
+        }
+    }
+
+    /**
+     * Opens the cached copy of a file, downloading it first if needed. A copy which is evicted between being
+     * found and being opened is downloaded again.
+     */
+    private FileChannel open(B2Session session, B2File file) throws IOException {
+        String key = getKey(file);
+        while(true){
+            File cached;
+            Long length = getLength(key);
+            if(length != null){
+                hits.incrementAndGet();
+                cached = new File(directory, key);
+                cached.setLastModified(System.currentTimeMillis());
+            }else{
+                misses.incrementAndGet();
+                cached = downloads.execute(key, () -> download(session, file, key));
+                length = getLength(key);
+            }
+
+            try {
+                return FileChannel.open(cached.toPath(), StandardOpenOption.READ);
+            } catch (NoSuchFileException ex) {
+                //Eviction forgets a file before deleting it, so only forget it here if it was deleted some other way
+                if(length != null) remove(key, length);
+            }
+        }
+    }
+
+    /**
+     * Downloads a file into a temporary file in the cache directory, then moves it into place, so a partly
+     * downloaded file is never served.
+     */
+    private File download(B2Session session, B2File file, String key){
+        //Another thread may have finished downloading it since this thread missed
+        File cached = get(key);
+        if(cached != null) return cached;
+
+        cached = new File(directory, key);
+        File temporary = new File(directory, key + "." + Thread.currentThread().getId() + PARTIAL_SUFFIX);
+        try {
+            client.downloadFile(session, file, temporary);
+            try {
+                Files.move(temporary.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to store cached copy of " + file.getName(), ex);
+        } finally {
+            temporary.delete();
+        }
+
+        add(key, cached.length());
+        return cached;
+    }
+
+    private synchronized File get(String key){
+        return entries.get(key) != null ? new File(directory, key) : null;
+    }
+
+    private synchronized Long getLength(String key){
+        return entries.get(key);
+    }
+
+    /**
+     * Records a cached file, then deletes the least recently used files until the cache is within its budget.
+     * The file which was just added is never deleted here, so it can be served even if it is over budget.
+     */
+    private synchronized void add(String key, long length){
+        Long previous = entries.put(key, length);
+        size += length - (previous != null ? previous : 0);
+
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while(size > maxBytes && iterator.hasNext()){
+            Map.Entry<String, Long> eldest = iterator.next();
+            if(eldest.getKey().equals(key)) continue;
+            iterator.remove();
+            size -= eldest.getValue();
+            //Readers which already have the file open can carry on reading it on most platforms
+            new File(directory, eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * Forgets a cached file, unless it has since been replaced by a copy of a different length.
+     */
+    private synchronized void remove(String key, long length){
+        if(entries.remove(key, length)) size -= length;
+    }
+
+    /**
+     * Gets the name of the cached copy of a file. File IDs are normally safe to use as names already.
+     */
+    private static String getKey(B2File file){
+        try {
+            return URLEncoder.encode(file.getID(), "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 is not supported by this platform", ex);
+        }
+    }
+
+    /**
+     * Deletes every cached file.
+     */
+    public synchronized void clear(){
+        for(String key : entries.keySet()) new File(directory, key).delete();
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the total size of the cached files.
+     *
+     * @return Size in bytes
+     */
+    public synchronized long getSize(){
+        return size;
+    }
+
+    /**
+     * Gets the total size of cached files above which the least recently used are deleted.
+     *
+     * @return Budget in bytes
+     */
+    public long getMaxBytes(){
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of downloads which were served from the cache.
+     *
+     * @return Number of hits
+     */
+    public long getHits(){
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of downloads which needed the file to be fetched, including those which shared a
+     * download started by another thread.
+     *
+     * @return Number of misses
+     */
+    public long getMisses(){
+        return misses.get();
+    }
+
+}
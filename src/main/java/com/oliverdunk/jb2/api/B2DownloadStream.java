@@ -0,0 +1,183 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.http.B2Connection;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Stream of the contents of a file being downloaded. A connection which fails or ends early is replaced by
+ * a Range request from the first byte which has not been read, and the SHA1 hash of the whole file is checked
+ * when the end is reached. Closing the stream closes its connection and gives back its transfer permit, and
+ * the transfer counts as successful if the whole file was read and its hash matched. Time between reads is
+ * spent by the caller, so is not counted as transfer latency.
+ */
+class B2DownloadStream extends InputStream {
+
+    private final B2Client client;
+    private final B2Session session;
+    private final B2File file;
+    private final B2ConcurrencyLimiter.Permit permit;
+    private final MessageDigest digest = B2Client.newSHA1();
+    //Trace which lasts until the stream is closed, or null if calls are not being traced
+    private final B2Trace trace;
+
+    private B2Connection connection;
+    private InputStream inputStream;
+    private String reportedHash;
+    private long position, connectedAt;
+    //Connections in a row which failed before enough bytes were read from them
+    private int failures;
+    private boolean finished, closed;
+    private IOException readFailure, hashFailure;
+    //When the last read returned, so time the caller spends between reads is not counted as transfer latency
+    private long returnedAt;
+
+    /**
+     * Constructs a B2DownloadStream, requesting the file straight away.
+     *
+     * @param client The B2Client used to request the file
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param permit Permit which is held until the stream is closed
+     * @throws B2APIException Thrown if the file could not be requested
+     */
+    B2DownloadStream(B2Client client, B2Session session, B2File file, B2ConcurrencyLimiter.Permit permit) throws B2APIException {
+        this.client = client;
+        this.session = session;
+        this.file = file;
+        this.permit = permit;
+        this.trace = client.startTrace(B2Client.DOWNLOAD_FILE);
+        try {
+            connect();
+        } catch (B2APIException ex) {
+            client.finishTrace(trace, ex);
+            throw ex;
+        }
+        returnedAt = System.nanoTime();
+    }
+
+    private void connect() throws B2APIException {
+        B2Trace previous = trace != null ? trace.enter() : null;
+        B2ConcurrencyLimiter.Permit previousPermit = permit.enter();
+        try {
+            connection = client.connectDownload(session, file, position);
+        } finally {
+            B2ConcurrencyLimiter.exit(previousPermit);
+            if(trace != null) B2Trace.exit(previous);
+        }
+        connectedAt = position;
+        try {
+            String hash = B2Client.getContentHash(connection);
+            if(hash != null) reportedHash = hash;
+            inputStream = connection.getInputStream();
+        } catch (IOException ex) {
+            connection.close();
+            throw new B2APIException("Failed to read download of " + file.getName(), ex);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if(closed) throw new IOException("Stream closed");
+        if(hashFailure != null) throw hashFailure;
+        if(finished) return -1;
+        if(length == 0) return 0;
+
+        permit.exclude(System.nanoTime() - returnedAt);
+        try {
+            return readContinuing(bytes, offset, length);
+        } catch (IOException ex) {
+            readFailure = ex;
+            throw ex;
+        } finally {
+            returnedAt = System.nanoTime();
+        }
+    }
+
+    private int readContinuing(byte[] bytes, int offset, int length) throws IOException {
+        while(true){
+            int count;
+            try {
+                count = inputStream.read(bytes, offset, length);
+            } catch (IOException ex) {
+                if(reconnect(ex)) continue;
+                //Every byte had already arrived, so the failure only cut off the end of the response
+                finish();
+                return -1;
+            }
+
+            if(count == -1){
+                if(position < file.getSize() && reconnect(new EOFException("Response ended " + (file.getSize() - position) + " bytes early"))){
+                    continue;
+                }
+                finish();
+                return -1;
+            }
+
+            digest.update(bytes, offset, count);
+            position += count;
+            if(position - connectedAt >= B2Client.RESUME_PROGRESS) failures = 0;
+            return count;
+        }
+    }
+
+    /**
+     * Replaces a failed connection with one which starts at the first byte which has not been read.
+     *
+     * @return False if every byte has already been read, so there is nothing to reconnect for
+     */
+    private boolean reconnect(IOException failure) throws IOException {
+        connection.close();
+        if(file.getSize() > 0 && position >= file.getSize()) return false;
+        if(++failures >= client.getRetryPolicy().getMaxAttempts()) throw failure;
+        if(trace != null) trace.retried();
+
+        try {
+            connect();
+        } catch (B2APIException ex) {
+            ex.addSuppressed(failure);
+            throw new IOException("Failed to continue download of " + file.getName() + " from offset " + position, ex);
+        }
+        return true;
+    }
+
+    /**
+     * Checks the hash once the whole file has been read. Only a matching download counts as finished, so a
+     * corrupt one is not reported to the limiter as a success.
+     */
+    private void finish() throws IOException {
+        String expected = reportedHash != null ? reportedHash : file.getContentSha1();
+        if(expected != null && !expected.equals(B2Client.toHex(digest.digest()))){
+            hashFailure = new IOException("SHA1 of downloaded data does not match " + expected + " for " + file.getName());
+            throw hashFailure;
+        }
+        finished = true;
+    }
+
+    @Override
+    public void close(){
+        if(closed) return;
+        closed = true;
+
+        if(finished){
+            permit.exclude(System.nanoTime() - returnedAt);
+            permit.success(position);
+        }
+        connection.close();
+        permit.release();
+        client.finishTrace(trace, readFailure);
+    }
+
+}
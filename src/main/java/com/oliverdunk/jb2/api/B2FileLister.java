@@ -0,0 +1,186 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2FilePage;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily lists the files in a bucket, fetching pages from b2_list_file_names only as they are needed, or from
+ * b2_list_file_versions when every version is wanted.
+ * While the caller works through one page, the next page is fetched in the background, so only two pages
+ * are held in memory at once no matter how many files the bucket contains.
+ */
+public class B2FileLister implements Iterable<B2File> {
+
+    //Largest page size accepted by the B2 API.
+    public static final int MAXIMUM_FILE_COUNT = 10000;
+    //Executor used to fetch pages in the background when none is given.
+    private static final Executor DEFAULT_EXECUTOR = B2AsyncClient.newDefaultExecutor();
+
+    private final B2Client client;
+    private final B2Session session;
+    private final B2Bucket bucket;
+    private Executor executor = DEFAULT_EXECUTOR;
+    private String startFileName, prefix, delimiter;
+    private int maxFileCount = 1000;
+    private boolean allVersions;
+
+    /**
+     * Constructs a B2FileLister which lists every file in a bucket, 1000 files per request.
+     *
+     * @param client The B2Client used to fetch each page
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket Bucket which should be listed
+     */
+    public B2FileLister(B2Client client, B2Session session, B2Bucket bucket){
+        this.client = client;
+        this.session = session;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Returns an iterator over the files, which begins fetching the first page immediately.
+     * Each call starts a new listing using the current settings.
+     *
+     * @return An iterator over the files in name order
+     */
+    @Override
+    public Iterator<B2File> iterator(){
+        return new PageIterator(startFileName, maxFileCount, prefix, delimiter, allVersions);
+    }
+
+    /**
+     * Returns a sequential stream over the files, which fetches pages as the stream is consumed.
+     *
+     * @return A stream of the files in name order
+     */
+    public Stream<B2File> stream(){
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Sets the file name which the listing starts at.
+     *
+     * @param startFileName The first file name to return, or null to start at the beginning of the bucket
+     */
+    public void setStartFileName(String startFileName){
+        this.startFileName = startFileName;
+    }
+
+    /**
+     * Sets the prefix which every listed file name must start with.
+     *
+     * @param prefix The prefix, or null for all files
+     */
+    public void setPrefix(String prefix){
+        this.prefix = prefix;
+    }
+
+    /**
+     * Sets the delimiter used to group file names into folders. Folders are returned as a B2File with
+     * a null ID, and a name ending in the delimiter.
+     *
+     * @param delimiter The delimiter, such as "/", or null for a flat listing
+     */
+    public void setDelimiter(String delimiter){
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Sets the number of files fetched in each request.
+     *
+     * @param maxFileCount Files per request, between 1 and MAXIMUM_FILE_COUNT
+     */
+    public void setMaxFileCount(int maxFileCount){
+        if(maxFileCount < 1 || maxFileCount > MAXIMUM_FILE_COUNT){
+            throw new IllegalArgumentException("File count must be between 1 and " + MAXIMUM_FILE_COUNT);
+        }
+        this.maxFileCount = maxFileCount;
+    }
+
+    /**
+     * Sets whether every version of each file is listed, newest first, instead of only the latest.
+     *
+     * @param allVersions True to list every version, including hidden files
+     */
+    public void setAllVersions(boolean allVersions){
+        this.allVersions = allVersions;
+    }
+
+    /**
+     * Sets the executor which pages are fetched on.
+     *
+     * @param executor Executor used for background requests
+     */
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    private class PageIterator implements Iterator<B2File> {
+
+        private final int maxFileCount;
+        private final String prefix, delimiter;
+        private final boolean allVersions;
+        private Iterator<B2File> current = Collections.<B2File>emptyList().iterator();
+        private CompletableFuture<B2FilePage> next;
+
+        private PageIterator(String startFileName, int maxFileCount, String prefix, String delimiter, boolean allVersions){
+            this.maxFileCount = maxFileCount;
+            this.prefix = prefix;
+            this.delimiter = delimiter;
+            this.allVersions = allVersions;
+            next = fetch(startFileName, null);
+        }
+
+        @Override
+        public boolean hasNext(){
+            while(!current.hasNext()){
+                if(next == null) return false;
+                B2FilePage page = await(next);
+
+                //Start fetching the following page before the caller works through this one
+                next = page.getNextFileName() == null ? null : fetch(page.getNextFileName(), page.getNextFileID());
+                current = page.getFiles().iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public B2File next(){
+            if(!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+
+        private CompletableFuture<B2FilePage> fetch(final String startFileName, final String startFileID){
+            return CompletableFuture.supplyAsync(() -> allVersions
+                    ? client.listFileVersions(session, bucket, startFileName, startFileID, maxFileCount, prefix, delimiter)
+                    : client.listFileNames(session, bucket, startFileName, maxFileCount, prefix, delimiter), executor);
+        }
+
+        private B2FilePage await(CompletableFuture<B2FilePage> page){
+            try {
+                return page.join();
+            } catch (CompletionException ex) {
+                next = null;
+                if(ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+                throw new B2APIException("Failed to list files in " + bucket.getName(), ex.getCause());
+            }
+        }
+
+    }
+
+}
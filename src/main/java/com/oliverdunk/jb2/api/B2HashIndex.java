@@ -0,0 +1,172 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe index of the SHA1 hashes of local files, keyed by path, size and modification time. A file whose
+ * size and modification time have not changed since it was last hashed does not need to be read again.
+ * The index can be saved to a compact binary file, so hashes are kept between runs.
+ */
+public class B2HashIndex {
+
+    //First bytes of an index file, "JB2I".
+    private static final int MAGIC = 0x4a423249;
+    private static final int VERSION = 1;
+    private static final int SHA1_LENGTH = 20;
+    //Longest path accepted when loading, well above any real path, so a damaged file cannot cause a huge allocation.
+    private static final int MAXIMUM_PATH_LENGTH = 64 * 1024;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Loads an index from a file. The index is only a cache, so a missing or unreadable file gives an empty
+     * index, and every file is hashed again.
+     *
+     * @param file The file which the index was saved to
+     * @return The loaded index
+     */
+    public static B2HashIndex load(File file){
+        B2HashIndex index = new B2HashIndex();
+        if(!file.isFile()) return index;
+
+        try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), B2Client.BUFFER_SIZE))){
+            if(inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) return index;
+            int count = inputStream.readInt();
+            //Bytes left after the header, which no path length can be larger than
+            long remaining = file.length() - 12;
+            for(int i = 0; i < count; i++){
+                int length = inputStream.readInt();
+                remaining -= 4 + 16 + SHA1_LENGTH;
+                if(length < 0 || length > Math.min(remaining, MAXIMUM_PATH_LENGTH)){
+                    index.entries.clear();
+                    return index;
+                }
+                remaining -= length;
+                byte[] path = new byte[length];
+                inputStream.readFully(path);
+                long size = inputStream.readLong();
+                long modified = inputStream.readLong();
+                byte[] hash = new byte[SHA1_LENGTH];
+                inputStream.readFully(hash);
+                index.entries.put(new String(path, StandardCharsets.UTF_8), new Entry(size, modified, hash));
+            }
+        } catch (IOException ex) {
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Saves the index to a file. The index is written to a temporary file first, so an interrupted save
+     * does not destroy the previous index.
+     *
+     * @param file The file which the index should be saved to
+     */
+    public void save(File file){
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            try(DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), B2Client.BUFFER_SIZE))){
+                //Take a snapshot first, so the count matches the entries written
+                Map<String, Entry> snapshot = new HashMap<String, Entry>(entries);
+                outputStream.writeInt(MAGIC);
+                outputStream.writeInt(VERSION);
+                outputStream.writeInt(snapshot.size());
+                for(Map.Entry<String, Entry> entry : snapshot.entrySet()){
+                    byte[] path = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    outputStream.writeInt(path.length);
+                    outputStream.write(path);
+                    outputStream.writeLong(entry.getValue().size);
+                    outputStream.writeLong(entry.getValue().modified);
+                    outputStream.write(entry.getValue().hash);
+                }
+            }
+
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to save hash index to " + file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Gets the hash of a file, if it was recorded when the file had the same size and modification time.
+     *
+     * @param path Path of the file, relative to the directory being indexed
+     * @param size Current number of bytes in the file
+     * @param modified Current modification time of the file, in milliseconds since the epoch
+     * @return The SHA1 hash in hex, or null if the file must be hashed again
+     */
+    public String getHash(String path, long size, long modified){
+        Entry entry = entries.get(path);
+        if(entry == null || entry.size != size || entry.modified != modified) return null;
+        return B2Client.toHex(entry.hash);
+    }
+
+    /**
+     * Records the hash of a file.
+     *
+     * @param path Path of the file, relative to the directory being indexed
+     * @param size Number of bytes in the file when it was hashed
+     * @param modified Modification time of the file when it was hashed, in milliseconds since the epoch
+     * @param hash The SHA1 hash in hex
+     */
+    public void putHash(String path, long size, long modified, String hash){
+        entries.put(path, new Entry(size, modified, fromHex(hash)));
+    }
+
+    /**
+     * Copies the hash of a file from another index, unless this index already has one for it.
+     *
+     * @param other The index to copy the hash from
+     * @param path Path of the file, relative to the directory being indexed
+     */
+    void keep(B2HashIndex other, String path){
+        Entry entry = other.entries.get(path);
+        if(entry != null) entries.putIfAbsent(path, entry);
+    }
+
+    /**
+     * Gets the number of files in the index.
+     *
+     * @return Number of recorded hashes
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    static byte[] fromHex(String hex){
+        if(hex.length() != SHA1_LENGTH * 2) throw new IllegalArgumentException("Not a SHA1 hash: " + hex);
+        byte[] bytes = new byte[SHA1_LENGTH];
+        for(int i = 0; i < bytes.length; i++){
+            bytes[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4) | Character.digit(hex.charAt(i * 2 + 1), 16));
+        }
+        return bytes;
+    }
+
+    private static class Entry {
+
+        private final long size, modified;
+        //Raw hash bytes, which take half the memory of the hex String
+        private final byte[] hash;
+
+        private Entry(long size, long modified, byte[] hash){
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+    }
+
+}
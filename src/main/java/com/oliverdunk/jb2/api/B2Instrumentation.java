@@ -0,0 +1,22 @@
+package com.oliverdunk.jb2.api;
+
+/**
+ * Receives a record of every API call made by a B2Client, for metrics and tracing. Calls to API methods,
+ * uploads and downloads are each reported once they finish, including any retries, so a call which was
+ * retried three times is reported once with a retry count of three.
+ * Implementations are called on the thread which made the call, so must be thread-safe and fast, and
+ * must not throw.
+ */
+public interface B2Instrumentation {
+
+    //Instrumentation which ignores every call, so calls are not timed at all.
+    B2Instrumentation NONE = call -> {};
+
+    /**
+     * Records a finished call.
+     *
+     * @param call What the call did and how long it took
+     */
+    void onCall(B2Call call);
+
+}
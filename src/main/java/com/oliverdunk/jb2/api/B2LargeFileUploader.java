@@ -0,0 +1,350 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Part;
+import com.oliverdunk.jb2.models.B2Session;
+import com.oliverdunk.jb2.models.B2UploadPartRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads files using the B2 large file API, splitting each file into parts which are uploaded concurrently.
+ * Parts are streamed from disk, so each in-flight part only holds a small fixed size buffer in memory.
+ */
+public class B2LargeFileUploader {
+
+    //Smallest part size accepted by the B2 API, for every part other than the last.
+    public static final long MINIMUM_PART_SIZE = 5 * 1000 * 1000;
+    //Largest number of parts which a single large file may be split into.
+    public static final int MAXIMUM_PARTS = 10000;
+
+    private final B2Client client;
+    private long partSize = 100 * 1000 * 1000, threshold = 200 * 1000 * 1000;
+    private int threads = 4;
+
+    /**
+     * Constructs a B2LargeFileUploader which sends its requests using the given client.
+     *
+     * @param client The B2Client used for all requests made by this uploader
+     */
+    public B2LargeFileUploader(B2Client client){
+        this.client = client;
+    }
+
+    /**
+     * Checks whether a file is large enough that it should be uploaded using this uploader.
+     *
+     * @param file The file which will be uploaded
+     * @return True if the file is at least as large as the threshold
+     */
+    public boolean isLargeFile(File file){
+        return file.length() >= threshold;
+    }
+
+    /**
+     * Uploads a file as a large file, using one connection per worker thread.
+     * If any part fails, the large file is cancelled and the exception is rethrown.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param file The file which should be uploaded
+     * @param name The name which should identify the file
+     * @return A B2File instance representing the completed file
+     */
+    public B2File upload(B2Session session, B2Bucket bucket, File file, String name){
+        return upload(session, bucket, file, name, null);
+    }
+
+    /**
+     * Uploads a file as a large file, recording each completed part in a local journal so that an upload
+     * interrupted by a crash can be resumed. Calling this again with the same journal checks the recorded
+     * parts against b2_list_parts, and only uploads the parts which are missing. If any part fails, the large
+     * file is kept for resuming and the exception is rethrown. The journal is deleted once the file is finished.
+     * A journal for a different upload, or for a local file which has changed since, is replaced.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param bucket The B2Bucket where the upload will take place
+     * @param file The file which should be uploaded
+     * @param name The name which should identify the file
+     * @param journalFile Where the journal is kept, or null to cancel the upload if it fails instead
+     * @return A B2File instance representing the completed file
+     */
+    public B2File upload(final B2Session session, B2Bucket bucket, final File file, String name, File journalFile){
+        final long length = file.length();
+        final long partLength = getPartSize(length);
+        final int partCount = (int) ((length + partLength - 1) / partLength);
+
+        //The large file API requires at least two parts
+        if(partCount < 2){
+            return client.trace(B2Client.UPLOAD_FILE, () -> client.retry(session, true, "Upload of " + name,
+                    () -> client.uploadFile(client.getUploadURL(session, bucket), file, name)));
+        }
+
+        final String[] partHashes = new String[partCount];
+        B2File largeFile = null;
+        B2UploadJournal journal = null;
+        //Close the journal however this ends, including failures while resuming or starting the large file
+        try {
+            if(journalFile != null){
+                String key = bucket.getID() + '/' + name + '/' + length + '/' + file.lastModified() + '/' + partLength;
+                journal = B2UploadJournal.open(journalFile);
+                if(journal != null && journal.getKey().equals(key)){
+                    largeFile = resume(session, journal, name, file, partLength, partHashes);
+                }else if(journal != null){
+                    abandon(session, journal);
+                }
+
+                if(largeFile == null){
+                    if(journal != null) journal.close();
+                    journal = null;
+                    largeFile = client.startLargeFile(session, bucket, name);
+                    journal = B2UploadJournal.create(journalFile, key, largeFile.getID());
+                }
+            }else{
+                largeFile = client.startLargeFile(session, bucket, name);
+            }
+
+            B2File result;
+            try {
+                uploadParts(session, largeFile, file, partLength, partHashes, journal);
+                result = client.finishLargeFile(session, largeFile, Arrays.asList(partHashes));
+            } catch (RuntimeException ex) {
+                //With a journal the large file is kept, so the upload can be resumed
+                if(journal == null) cancel(session, largeFile);
+                throw ex;
+            }
+            if(journal != null){
+                journal.close();
+                journal = null;
+                journalFile.delete();
+            }
+            return result;
+        } finally {
+            if(journal != null) journal.close();
+        }
+    }
+
+    private void cancel(B2Session session, B2File largeFile){
+        try {
+            client.cancelLargeFile(session, largeFile);
+        } catch (B2APIException ignored) {
+            //The original failure is more useful, and unfinished large files are also cleaned up by lifecycle rules
+        }
+    }
+
+    /**
+     * Reconciles a journal with the parts which B2 has for its large file, filling in the hash of each part
+     * which does not need uploading again. Parts which B2 has but the journal does not, because the process
+     * stopped before recording them, are hashed locally and kept if they match.
+     *
+     * @return The large file, or null if B2 no longer has it
+     */
+    private B2File resume(B2Session session, B2UploadJournal journal, String name, File file, long partLength, String[] partHashes){
+        B2File largeFile = new B2File(name, "b2/x-auto", journal.getLargeFileID(), 0, 0);
+        List<B2Part> parts;
+        try {
+            parts = client.listParts(session, largeFile);
+        } catch (B2APIException ex) {
+            //The large file has been finished, cancelled or removed, so the upload has to start again
+            if(ex.getStatusCode() == 400 || ex.getStatusCode() == 404) return null;
+            throw ex;
+        }
+
+        long length = file.length();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            for(B2Part part : parts){
+                int index = part.getPartNumber() - 1;
+                if(index < 0 || index >= partHashes.length || part.getContentSha1() == null) continue;
+                long offset = index * partLength;
+                long partSize = Math.min(partLength, length - offset);
+                if(part.getContentLength() != partSize) continue;
+
+                String hash = journal.getPart(part.getPartNumber());
+                if(hash == null){
+                    hash = B2Client.getHash(channel, offset, partSize);
+                    if(hash.equals(part.getContentSha1())) journal.putPart(part.getPartNumber(), hash);
+                }
+                if(hash.equals(part.getContentSha1())) partHashes[index] = hash;
+            }
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to read " + file.getPath(), ex);
+        }
+        return largeFile;
+    }
+
+    /**
+     * Cancels the large file of a journal which is being replaced, so its parts do not stay in the bucket.
+     */
+    private void abandon(B2Session session, B2UploadJournal journal){
+        try {
+            client.cancelLargeFile(session, new B2File(null, "b2/x-auto", journal.getLargeFileID(), 0, 0));
+        } catch (B2APIException ignored) {
+            //It may already have been finished or cancelled
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Uploads every part which does not yet have a hash, using one connection per worker thread.
+     *
+     * @param journal Journal which completed parts are recorded in, or null
+     */
+    private void uploadParts(final B2Session session, final B2File largeFile, final File file, final long partLength,
+                             final String[] partHashes, final B2UploadJournal journal){
+        final long length = file.length();
+        final List<Integer> missing = new ArrayList<Integer>();
+        for(int i = 0; i < partHashes.length; i++) if(partHashes[i] == null) missing.add(i);
+        if(missing.isEmpty()) return;
+
+        final AtomicInteger nextPart = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        int workerCount = Math.min(threads, missing.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        List<Future<?>> workers = new ArrayList<Future<?>>();
+
+        try {
+            for(int i = 0; i < workerCount; i++){
+                workers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        try {
+                            uploadMissing();
+                        } catch (RuntimeException | Error ex) {
+                            //Stop the other workers straight away, rather than once this failure is collected
+                            failed.set(true);
+                            throw ex;
+                        }
+                        return null;
+                    }
+
+                    private void uploadMissing(){
+                        //Each worker needs its own upload URL, which is reused for all of its parts until one fails
+                        final B2UploadPartRequest[] upload = new B2UploadPartRequest[1];
+                        int next;
+                        while(!failed.get() && (next = nextPart.getAndIncrement()) < missing.size()){
+                            final int part = missing.get(next);
+                            final int partNumber = part + 1;
+                            final long offset = part * partLength;
+                            //Traced as one call, so retries of the part are counted
+                            partHashes[part] = client.trace(B2Client.UPLOAD_PART, () -> client.retry(session, true,
+                                    "Upload of part " + partNumber + " of " + largeFile.getName(), () -> {
+                                if(upload[0] == null) upload[0] = client.getUploadPartURL(session, largeFile);
+                                try {
+                                    return client.uploadPart(upload[0], partNumber, file, offset, Math.min(partLength, length - offset));
+                                } catch (B2APIException ex) {
+                                    upload[0] = null;
+                                    throw ex;
+                                }
+                            }));
+                            if(journal != null) journal.putPart(partNumber, partHashes[part]);
+                        }
+                    }
+                }));
+            }
+
+            RuntimeException failure = null;
+            for(Future<?> worker : workers){
+                try {
+                    worker.get();
+                } catch (ExecutionException ex) {
+                    failed.set(true);
+                    if(failure == null) failure = wrap(ex.getCause());
+                } catch (InterruptedException ex) {
+                    failed.set(true);
+                    Thread.currentThread().interrupt();
+                    if(failure == null) failure = new B2APIException("Interrupted while uploading " + largeFile.getName(), ex);
+                }
+            }
+            if(failure != null) throw failure;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Picks the size of each part for a file, increasing the configured part size if the file would
+     * otherwise be split into more parts than the API allows.
+     *
+     * @param length Number of bytes in the file
+     * @return The number of bytes which should be sent in each part
+     */
+    private long getPartSize(long length){
+        long minimum = (length + MAXIMUM_PARTS - 1) / MAXIMUM_PARTS;
+        return Math.max(partSize, minimum);
+    }
+
+    private static RuntimeException wrap(Throwable cause){
+        if(cause instanceof RuntimeException) return (RuntimeException) cause;
+        return new B2APIException("Failed to upload large file", cause);
+    }
+
+    /**
+     * Gets the number of bytes sent in each part.
+     *
+     * @return The size of each part, except the last
+     */
+    public long getPartSize(){
+        return partSize;
+    }
+
+    /**
+     * Sets the number of bytes sent in each part.
+     *
+     * @param partSize The size of each part, which must be at least MINIMUM_PART_SIZE
+     */
+    public void setPartSize(long partSize){
+        if(partSize < MINIMUM_PART_SIZE) throw new IllegalArgumentException("Part size must be at least " + MINIMUM_PART_SIZE);
+        this.partSize = partSize;
+    }
+
+    /**
+     * Gets the size above which files are uploaded as large files.
+     *
+     * @return The threshold in bytes
+     */
+    public long getThreshold(){
+        return threshold;
+    }
+
+    /**
+     * Sets the size above which files are uploaded as large files.
+     *
+     * @param threshold The threshold in bytes
+     */
+    public void setThreshold(long threshold){
+        this.threshold = threshold;
+    }
+
+    /**
+     * Gets the number of parts which are uploaded at the same time.
+     *
+     * @return The number of worker threads used for each file
+     */
+    public int getThreads(){
+        return threads;
+    }
+
+    /**
+     * Sets the number of parts which are uploaded at the same time.
+     *
+     * @param threads The number of worker threads used for each file, which must be at least one
+     */
+    public void setThreads(int threads){
+        if(threads < 1) throw new IllegalArgumentException("At least one thread is required");
+        this.threads = threads;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.oliverdunk.jb2.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations, in the style of HdrHistogram. Every power of two is split into 32 linear
+ * buckets, so any recorded value can be read back to within about 3%, using a fixed 10KB of memory.
+ * Durations from a nanosecond to over two hours are covered, and longer durations count as the longest.
+ * Recording is a single atomic increment, so a histogram can be shared between any number of threads.
+ */
+public class B2LatencyHistogram {
+
+    //Number of linear buckets in each power of two is 2^SUB_BUCKET_BITS.
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Largest value which is told apart from longer ones, just over two hours in nanoseconds.
+    private static final long MAX_VALUE = (1L << 43) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(getIndex(MAX_VALUE) + 1);
+    private final LongAdder total = new LongAdder(), sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos Duration in nanoseconds, where negative values count as zero
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(getIndex(Math.min(value, MAX_VALUE)));
+        total.increment();
+        sum.add(value);
+        if(value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Takes a copy of the durations recorded so far. Durations recorded while the copy is taken may be missing
+     * from some of its totals.
+     *
+     * @return The copy
+     */
+    public Snapshot snapshot(){
+        long[] copy = new long[counts.length()];
+        for(int i = 0; i < copy.length; i++) copy[i] = counts.get(i);
+        return new Snapshot(copy, total.sum(), sum.sum(), max.get());
+    }
+
+    /**
+     * Gets the bucket of a value. Values below 64 have a bucket each, and above that each power of two is split
+     * into 32 buckets by the bits which follow the highest set bit.
+     */
+    private static int getIndex(long value){
+        if(value < SUB_BUCKETS) return (int) value;
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the largest value which falls in a bucket.
+     */
+    private static long getHighestValue(int index){
+        if(index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Durations recorded by a B2LatencyHistogram up to a point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count, sum, max;
+
+        private Snapshot(long[] counts, long count, long sum, long max){
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of durations recorded.
+         *
+         * @return Number of durations
+         */
+        public long getCount(){
+            return count;
+        }
+
+        /**
+         * Gets the mean of the durations recorded.
+         *
+         * @return Mean in nanoseconds, or 0 if nothing was recorded
+         */
+        public double getMean(){
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets the longest duration recorded.
+         *
+         * @return Longest duration in nanoseconds, or 0 if nothing was recorded
+         */
+        public long getMax(){
+            return max;
+        }
+
+        /**
+         * Gets the duration which a percentage of the recorded durations were at or below, such as 99 for
+         * the 99th percentile.
+         *
+         * @param percentile Percentage between 0 and 100
+         * @return Duration in nanoseconds, or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile){
+            if(percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be between 0 and 100");
+
+            long recorded = 0;
+            for(long bucket : counts) recorded += bucket;
+            if(recorded == 0) return 0;
+
+            long target = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++){
+                seen += counts[i];
+                if(seen >= target) return Math.min(getHighestValue(i), max);
+            }
+            return max;
+        }
+
+    }
+
+}
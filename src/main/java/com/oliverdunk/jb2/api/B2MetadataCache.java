@@ -0,0 +1,186 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches file and bucket metadata for a B2Client, so repeated lookups of the same objects do not each need a
+ * request. Files are cached by ID and by name within their bucket, and buckets are cached by name.
+ * Entries are removed when the client that owns the cache deletes or changes them, and otherwise expire after
+ * the time to live, which bounds how stale a change made by another client can appear.
+ * <p>
+ * Entries are not keyed by session, so a cache must only be used with sessions of a single application key.
+ * Otherwise an object looked up with one key could be returned to a key which is not allowed to see it.
+ */
+public class B2MetadataCache {
+
+    private final B2Cache<String, B2File> filesByID, filesByName;
+    private final B2Cache<String, B2Bucket> bucketsByName;
+    //Name keys of cached files by name, so an upload to an unknown bucket does not need to search every name.
+    private final Map<String, Set<String>> nameKeysByName = new HashMap<String, Set<String>>();
+
+    /**
+     * Constructs a B2MetadataCache which keeps up to 10000 entries of each kind for one minute.
+     */
+    public B2MetadataCache(){
+        this(10000, 60 * 1000);
+    }
+
+    /**
+     * Constructs a B2MetadataCache.
+     *
+     * @param maxEntries Largest number of entries of each kind
+     * @param timeToLive Milliseconds after which an entry expires
+     */
+    public B2MetadataCache(int maxEntries, long timeToLive){
+        filesByID = new B2Cache<String, B2File>(maxEntries, timeToLive);
+        filesByName = new B2Cache<String, B2File>(maxEntries, timeToLive) {
+            @Override
+            protected void removed(String nameKey, B2File file){
+                unindexName(file.getName(), nameKey);
+            }
+        };
+        bucketsByName = new B2Cache<String, B2Bucket>(maxEntries, timeToLive);
+    }
+
+    B2File getFile(String fileID){
+        return filesByID.get(fileID);
+    }
+
+    B2File getFile(B2Bucket bucket, String name){
+        return filesByName.get(getNameKey(bucket.getID(), name));
+    }
+
+    void putFile(B2File file){
+        filesByID.put(file.getID(), file);
+    }
+
+    void putFile(B2Bucket bucket, B2File file){
+        String nameKey = getNameKey(bucket.getID(), file.getName());
+        filesByID.put(file.getID(), file);
+        filesByName.put(nameKey, file);
+        synchronized(nameKeysByName){
+            Set<String> nameKeys = nameKeysByName.get(file.getName());
+            if(nameKeys == null) nameKeysByName.put(file.getName(), nameKeys = new HashSet<String>());
+            nameKeys.add(nameKey);
+        }
+    }
+
+    /**
+     * Removes a file which has been deleted, including from the names of every bucket. The names are found
+     * through the index kept by filesByName itself, which cannot lose a name that is still cached.
+     */
+    void removeFile(B2File file){
+        filesByID.remove(file.getID());
+        removeName(file.getName());
+    }
+
+    /**
+     * Removes the cached version of a name which has just been uploaded to a bucket.
+     */
+    void removeName(B2Bucket bucket, String name){
+        filesByName.remove(getNameKey(bucket.getID(), name));
+    }
+
+    /**
+     * Removes the cached version of a name which has just been uploaded, when its bucket is not known.
+     */
+    void removeName(String name){
+        List<String> nameKeys;
+        synchronized(nameKeysByName){
+            Set<String> indexed = nameKeysByName.get(name);
+            if(indexed == null) return;
+            nameKeys = new ArrayList<String>(indexed);
+        }
+        //Removed outside the lock, since the cache calls back into unindexName while it is locked
+        for(String nameKey : nameKeys) filesByName.remove(nameKey);
+    }
+
+    private void unindexName(String name, String nameKey){
+        synchronized(nameKeysByName){
+            Set<String> nameKeys = nameKeysByName.get(name);
+            if(nameKeys != null && nameKeys.remove(nameKey) && nameKeys.isEmpty()) nameKeysByName.remove(name);
+        }
+    }
+
+    B2Bucket getBucket(String name){
+        return bucketsByName.get(name);
+    }
+
+    void putBucket(B2Bucket bucket){
+        bucketsByName.put(bucket.getName(), bucket);
+    }
+
+    void removeBucket(B2Bucket bucket){
+        bucketsByName.remove(bucket.getName());
+    }
+
+    private static String getNameKey(String bucketID, String name){
+        return bucketID + '/' + name;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear(){
+        filesByID.clear();
+        filesByName.clear();
+        bucketsByName.clear();
+        synchronized(nameKeysByName){
+            nameKeysByName.clear();
+        }
+    }
+
+    /**
+     * Gets the cache of files by ID.
+     *
+     * @return The cache used by getFile
+     */
+    public B2Cache<String, B2File> getFilesByID(){
+        return filesByID;
+    }
+
+    /**
+     * Gets the cache of files by bucket and name.
+     *
+     * @return The cache used by getFileByName
+     */
+    public B2Cache<String, B2File> getFilesByName(){
+        return filesByName;
+    }
+
+    /**
+     * Gets the cache of buckets by name.
+     *
+     * @return The cache used by getBucket
+     */
+    public B2Cache<String, B2Bucket> getBucketsByName(){
+        return bucketsByName;
+    }
+
+    /**
+     * Gets the total number of lookups which were answered from the cache.
+     *
+     * @return Hits across every kind of entry
+     */
+    public long getHits(){
+        return filesByID.getHits() + filesByName.getHits() + bucketsByName.getHits();
+    }
+
+    /**
+     * Gets the total number of lookups which needed a request.
+     *
+     * @return Misses across every kind of entry
+     */
+    public long getMisses(){
+        return filesByID.getMisses() + filesByName.getMisses() + bucketsByName.getMisses();
+    }
+
+}
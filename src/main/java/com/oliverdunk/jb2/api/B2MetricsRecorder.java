@@ -0,0 +1,200 @@
+package com.oliverdunk.jb2.api;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation which keeps counters and latency histograms for each API method, for setting and checking
+ * service level objectives. Recording a call only touches lock-free counters, so one recorder can be shared
+ * by every thread of a busy client. Use snapshot to read the totals so far:
+ * <pre>
+ * B2MetricsRecorder metrics = new B2MetricsRecorder();
+ * client.setInstrumentation(metrics);
+ * ...
+ * long p99 = metrics.snapshot().get("b2_upload_file").getLatency().getPercentile(99);
+ * </pre>
+ */
+public class B2MetricsRecorder implements B2Instrumentation {
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+    @Override
+    public void onCall(B2Call call){
+        MethodMetrics metrics = methods.get(call.getMethod());
+        if(metrics == null) metrics = methods.computeIfAbsent(call.getMethod(), method -> new MethodMetrics());
+        metrics.record(call);
+    }
+
+    /**
+     * Takes a copy of the totals so far for every method which has been called.
+     *
+     * @return Totals by method name, in order of name
+     */
+    public Map<String, Summary> snapshot(){
+        Map<String, Summary> snapshot = new TreeMap<String, Summary>();
+        for(Map.Entry<String, MethodMetrics> entry : methods.entrySet()){
+            snapshot.put(entry.getKey(), entry.getValue().summarize());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets every call recorded so far.
+     */
+    public void reset(){
+        methods.clear();
+    }
+
+    /**
+     * Totals for a single method, which are updated concurrently.
+     */
+    private static class MethodMetrics {
+
+        private final LongAdder calls = new LongAdder(), failures = new LongAdder(), retries = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder(), bytesReceived = new LongAdder();
+        private final B2LatencyHistogram latency = new B2LatencyHistogram(), timeToFirstByte = new B2LatencyHistogram();
+        private final B2LatencyHistogram queueWait = new B2LatencyHistogram();
+        private final ConcurrentMap<String, LongAdder> errorCodes = new ConcurrentHashMap<String, LongAdder>();
+
+        private void record(B2Call call){
+            calls.increment();
+            if(!call.isSuccessful()) failures.increment();
+            if(call.getRetries() > 0) retries.add(call.getRetries());
+            bytesSent.add(call.getBytesSent());
+            bytesReceived.add(call.getBytesReceived());
+            latency.record(call.getLatency());
+            if(call.getTimeToFirstByte() >= 0) timeToFirstByte.record(call.getTimeToFirstByte());
+            queueWait.record(call.getQueueWait());
+            if(call.getErrorCode() != null) errorCodes.computeIfAbsent(call.getErrorCode(), code -> new LongAdder()).increment();
+        }
+
+        private Summary summarize(){
+            Map<String, Long> codes = new TreeMap<String, Long>();
+            for(Map.Entry<String, LongAdder> entry : errorCodes.entrySet()) codes.put(entry.getKey(), entry.getValue().sum());
+            return new Summary(calls.sum(), failures.sum(), retries.sum(), bytesSent.sum(), bytesReceived.sum(),
+                    latency.snapshot(), timeToFirstByte.snapshot(), queueWait.snapshot(), Collections.unmodifiableMap(codes));
+        }
+
+    }
+
+    /**
+     * Totals for a single method up to a point in time.
+     */
+    public static class Summary {
+
+        private final long calls, failures, retries, bytesSent, bytesReceived;
+        private final B2LatencyHistogram.Snapshot latency, timeToFirstByte, queueWait;
+        private final Map<String, Long> errorCodes;
+
+        private Summary(long calls, long failures, long retries, long bytesSent, long bytesReceived,
+                        B2LatencyHistogram.Snapshot latency, B2LatencyHistogram.Snapshot timeToFirstByte,
+                        B2LatencyHistogram.Snapshot queueWait, Map<String, Long> errorCodes){
+            this.calls = calls;
+            this.failures = failures;
+            this.retries = retries;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.latency = latency;
+            this.timeToFirstByte = timeToFirstByte;
+            this.queueWait = queueWait;
+            this.errorCodes = errorCodes;
+        }
+
+        /**
+         * Gets the number of calls which finished.
+         *
+         * @return Number of calls
+         */
+        public long getCalls(){
+            return calls;
+        }
+
+        /**
+         * Gets the number of calls which failed after any retries.
+         *
+         * @return Number of failed calls
+         */
+        public long getFailures(){
+            return failures;
+        }
+
+        /**
+         * Gets the total number of retries made by every call.
+         *
+         * @return Number of retries
+         */
+        public long getRetries(){
+            return retries;
+        }
+
+        /**
+         * Gets the total number of bytes of request bodies sent.
+         *
+         * @return Number of bytes
+         */
+        public long getBytesSent(){
+            return bytesSent;
+        }
+
+        /**
+         * Gets the total number of bytes of response bodies received.
+         *
+         * @return Number of bytes
+         */
+        public long getBytesReceived(){
+            return bytesReceived;
+        }
+
+        /**
+         * Gets the latency of whole calls, including retries.
+         *
+         * @return Latencies in nanoseconds
+         */
+        public B2LatencyHistogram.Snapshot getLatency(){
+            return latency;
+        }
+
+        /**
+         * Gets the time between sending the last request of each call and receiving its response.
+         *
+         * @return Times in nanoseconds
+         */
+        public B2LatencyHistogram.Snapshot getTimeToFirstByte(){
+            return timeToFirstByte;
+        }
+
+        /**
+         * Gets the time each call spent waiting for a transfer slot or for bandwidth.
+         *
+         * @return Times in nanoseconds
+         */
+        public B2LatencyHistogram.Snapshot getQueueWait(){
+            return queueWait;
+        }
+
+        /**
+         * Gets the number of calls which ended with each error code returned by B2.
+         *
+         * @return Number of calls by error code
+         */
+        public Map<String, Long> getErrorCodes(){
+            return errorCodes;
+        }
+
+        /**
+         * Gets the rate at which bytes were sent and received, over the time calls spent in flight.
+         *
+         * @return Bytes per second, or 0 if no time was recorded
+         */
+        public double getBytesPerSecond(){
+            double seconds = latency.getMean() * latency.getCount() / 1e9;
+            return seconds == 0 ? 0 : (bytesSent + bytesReceived) / seconds;
+        }
+
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downloads files by splitting them into ranges which are fetched over several connections at once.
+ * Each range is written straight into a preallocated destination file, and the SHA1 hash of the result is
+ * checked against the hash reported by the server once every range has been written.
+ */
+public class B2ParallelDownloader {
+
+    private final B2Client client;
+    private long rangeSize = 100 * 1000 * 1000, threshold = 200 * 1000 * 1000;
+    private int threads = 4;
+
+    /**
+     * Constructs a B2ParallelDownloader which sends its requests using the given client.
+     *
+     * @param client The B2Client used for all requests made by this downloader
+     */
+    public B2ParallelDownloader(B2Client client){
+        this.client = client;
+    }
+
+    /**
+     * Checks whether a file is large enough that it should be downloaded using this downloader.
+     *
+     * @param file The file which will be downloaded
+     * @return True if the file is at least as large as the threshold
+     */
+    public boolean isLargeFile(B2File file){
+        return file.getSize() >= threshold;
+    }
+
+    /**
+     * Downloads a file in parallel ranges, using the size of the B2File to split the file. The result is checked
+     * against the SHA1 hash reported with the ranges, or otherwise the hash of the B2File, when either is known.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     * @param file The file which should be downloaded
+     * @param destination Where the file should be downloaded to
+     */
+    public void download(final B2Session session, final B2File file, File destination){
+        final long length = file.getSize();
+        final int rangeCount = (int) ((length + rangeSize - 1) / rangeSize);
+        final long rangeLength = rangeSize;
+        final AtomicInteger nextRange = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicReference<String> expectedHash = new AtomicReference<String>();
+
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(destination, "rw")){
+            //Preallocate the destination so every range can be written at its final position
+            randomAccessFile.setLength(length);
+            final FileChannel channel = randomAccessFile.getChannel();
+
+            int workerCount = Math.max(1, Math.min(threads, rangeCount));
+            ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+            List<Future<?>> workers = new ArrayList<Future<?>>();
+
+            try {
+                for(int i = 0; i < workerCount; i++){
+                    workers.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            int range;
+                            try {
+                                while(!failed.get() && (range = nextRange.getAndIncrement()) < rangeCount){
+                                    long offset = range * rangeLength;
+                                    String hash = client.downloadRange(session, file, offset, Math.min(rangeLength, length - offset), channel);
+                                    if(hash != null) expectedHash.set(hash);
+                                }
+                            } catch (RuntimeException | Error ex) {
+                                //Stop the other workers straight away, rather than once this failure is collected
+                                failed.set(true);
+                                throw ex;
+                            }
+                            return null;
+                        }
+                    }));
+                }
+
+                //Wait for every worker before throwing, so none is still writing when the channel is closed
+                RuntimeException failure = null;
+                for(Future<?> worker : workers){
+                    try {
+                        worker.get();
+                    } catch (ExecutionException ex) {
+                        failed.set(true);
+                        if(failure == null){
+                            Throwable cause = ex.getCause();
+                            failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                                    : new B2APIException("Failed to download " + file.getName(), cause);
+                        }
+                    } catch (InterruptedException ex) {
+                        failed.set(true);
+                        Thread.currentThread().interrupt();
+                        if(failure == null) failure = new B2APIException("Interrupted while downloading " + file.getName(), ex);
+                    }
+                }
+                if(failure != null) throw failure;
+            } finally {
+                executor.shutdownNow();
+            }
+
+            String hash = expectedHash.get();
+            if(hash == null) hash = file.getContentSha1();
+            //Large files only have a hash if one was given when they were started, so there is nothing to check against
+            if(hash != null && !hash.equals(B2Client.getHash(channel, length))){
+                throw new B2APIException("SHA1 of " + destination.getPath() + " does not match " + file.getName());
+            }
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to write " + destination.getPath(), ex);
+        }
+    }
+
+    /**
+     * Gets the number of bytes fetched in each range request.
+     *
+     * @return The size of each range, except the last
+     */
+    public long getRangeSize(){
+        return rangeSize;
+    }
+
+    /**
+     * Sets the number of bytes fetched in each range request.
+     *
+     * @param rangeSize The size of each range, which must be positive
+     */
+    public void setRangeSize(long rangeSize){
+        if(rangeSize < 1) throw new IllegalArgumentException("Range size must be positive");
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * Gets the size above which files are downloaded in parallel ranges.
+     *
+     * @return The threshold in bytes
+     */
+    public long getThreshold(){
+        return threshold;
+    }
+
+    /**
+     * Sets the size above which files are downloaded in parallel ranges.
+     *
+     * @param threshold The threshold in bytes
+     */
+    public void setThreshold(long threshold){
+        this.threshold = threshold;
+    }
+
+    /**
+     * Gets the number of ranges which are downloaded at the same time.
+     *
+     * @return The number of worker threads used for each file
+     */
+    public int getThreads(){
+        return threads;
+    }
+
+    /**
+     * Sets the number of ranges which are downloaded at the same time.
+     *
+     * @param threads The number of worker threads used for each file, which must be at least one
+     */
+    public void setThreads(int threads){
+        if(threads < 1) throw new IllegalArgumentException("At least one thread is required");
+        this.threads = threads;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which failed requests a B2Client retries, and how long it waits before each retry.
+ * Delays grow exponentially from the initial delay up to the maximum, with full jitter so that many clients
+ * throttled at the same moment do not all retry together. A Retry-After header sent by B2 is always honoured.
+ * Uploads have their own budget, because every upload retry also needs a fresh upload URL.
+ */
+public class B2RetryPolicy {
+
+    //Policy which never retries, sending every request exactly once.
+    public static final B2RetryPolicy NONE = new B2RetryPolicy(1, 1, 0, 0);
+
+    private final int maxAttempts, maxUploadAttempts;
+    private final long initialDelay, maxDelay;
+
+    /**
+     * Constructs a B2RetryPolicy which makes up to 5 attempts at every request, waiting between 0.5 and
+     * 30 seconds between attempts.
+     */
+    public B2RetryPolicy(){
+        this(5, 5, 500, 30 * 1000);
+    }
+
+    /**
+     * Constructs a B2RetryPolicy.
+     *
+     * @param maxAttempts Largest number of attempts for metadata requests and downloads, including the first
+     * @param maxUploadAttempts Largest number of attempts for uploads, including the first
+     * @param initialDelay Milliseconds before the first retry, which is doubled for every further retry
+     * @param maxDelay Largest number of milliseconds to wait before a retry, unless B2 asks for longer
+     */
+    public B2RetryPolicy(int maxAttempts, int maxUploadAttempts, long initialDelay, long maxDelay){
+        if(maxAttempts < 1 || maxUploadAttempts < 1) throw new IllegalArgumentException("At least one attempt is required");
+        this.maxAttempts = maxAttempts;
+        this.maxUploadAttempts = maxUploadAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Checks whether a failed request is safe to retry. This covers timeouts, throttling, server errors,
+     * expired tokens and broken connections. Failures of local files are not retried, and neither are broken
+     * connections after a request which B2 would apply twice, such as b2_copy_file, has been sent.
+     *
+     * @param ex The exception which caused the request to fail
+     * @return True if the request may succeed if it is sent again
+     */
+    public boolean isRetryable(B2APIException ex){
+        switch(ex.getStatusCode()){
+            //Streamed uploads cannot read the body of a 401, so one without a code may also be an expired token
+            case 401: return isExpiredToken(ex) || ex.getIdentifier() == null;
+            case 408: case 429: case 500: case 502: case 503: case 504: return true;
+            //Only failures of the connection; local failures such as a missing file are wrapped so they fail at once
+            case 0: return ex.getCause() instanceof IOException && !(ex.getCause() instanceof B2Client.RequestSentException);
+            default: return false;
+        }
+    }
+
+    /**
+     * Checks whether a request failed because its authorization token has expired.
+     *
+     * @param ex The exception which caused the request to fail
+     * @return True if a new token is needed
+     */
+    public static boolean isExpiredToken(B2APIException ex){
+        return ex.getStatusCode() == 401 && "expired_auth_token".equals(ex.getIdentifier());
+    }
+
+    /**
+     * Gets how long to wait before a retry.
+     *
+     * @param attempt The number of attempts which have already failed, starting at 1
+     * @param ex The exception which caused the last attempt to fail
+     * @return Milliseconds to wait before the next attempt
+     */
+    public long getDelay(int attempt, B2APIException ex){
+        long ceiling = Math.min(maxDelay, initialDelay << Math.min(attempt - 1, 30));
+        long delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+        if(ex.getRetryAfter() > 0) delay = Math.max(delay, ex.getRetryAfter() * 1000L);
+        return delay;
+    }
+
+    /**
+     * Waits before a retry.
+     *
+     * @param attempt The number of attempts which have already failed, starting at 1
+     * @param ex The exception which caused the last attempt to fail
+     * @throws B2APIException Thrown, with the original failure as its cause, if the thread is interrupted
+     */
+    void backoff(int attempt, B2APIException ex){
+        long delay = getDelay(attempt, ex);
+        if(delay <= 0) return;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the largest number of attempts for metadata requests and downloads.
+     *
+     * @return Maximum attempts, including the first
+     */
+    public int getMaxAttempts(){
+        return maxAttempts;
+    }
+
+    /**
+     * Gets the largest number of attempts for uploads.
+     *
+     * @return Maximum attempts, including the first
+     */
+    public int getMaxUploadAttempts(){
+        return maxUploadAttempts;
+    }
+
+}
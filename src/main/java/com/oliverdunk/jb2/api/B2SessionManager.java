@@ -0,0 +1,229 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.models.B2Session;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a single B2Session authorized for as long as it is needed. The token is refreshed on a background
+ * thread before it expires, and swapped into the session in place, so every holder of the session carries on
+ * without failed requests. The session can also be saved to a cache file, letting short lived processes reuse
+ * a token instead of each waiting for b2_authorize_account when they start.
+ */
+public class B2SessionManager implements Closeable {
+
+    //Longest time between checks of whether the token needs refreshing.
+    private static final long MAXIMUM_CHECK_INTERVAL = 60 * 1000;
+    private static final Logger LOGGER = Logger.getLogger(B2SessionManager.class.getName());
+
+    private final B2Client client;
+    private final String accountID, applicationKey;
+    private File cacheFile;
+    private long tokenLifetime = 24 * 60 * 60 * 1000, refreshMargin = 60 * 60 * 1000;
+
+    private B2Session session;
+    private ScheduledExecutorService scheduler;
+    //Time the current token was issued, and the token which was last saved, both guarded by this manager.
+    private long issued;
+    private String savedToken;
+
+    /**
+     * Constructs a B2SessionManager, which does not authorize the account until a session is first needed.
+     *
+     * @param client The B2Client used to authorize the account
+     * @param accountID Your B2 API account ID
+     * @param applicationKey Your B2 API application key
+     */
+    public B2SessionManager(B2Client client, String accountID, String applicationKey){
+        this.client = client;
+        this.accountID = accountID;
+        this.applicationKey = applicationKey;
+    }
+
+    /**
+     * Gets the managed session, authorizing the account or loading the cache file the first time it is called.
+     * The same session is always returned, and its token is kept up to date in the background.
+     *
+     * @return A session authenticated with the API
+     */
+    public synchronized B2Session getSession(){
+        if(session != null) return session;
+
+        B2Session cached = load();
+        if(cached != null){
+            session = cached;
+            client.setCredentials(session, accountID, applicationKey);
+        }else{
+            session = client.authorizeAccount(accountID, applicationKey);
+            issued = System.currentTimeMillis();
+        }
+
+        //Started before saving, so the token is always refreshed even if the cache cannot be written
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "JB2-session-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, Math.min(MAXIMUM_CHECK_INTERVAL, refreshMargin / 2));
+        scheduler.scheduleWithFixedDelay(this::check, 0, interval, TimeUnit.MILLISECONDS);
+        if(cached == null) save();
+        return session;
+    }
+
+    /**
+     * Authorizes the account again now, whether or not the token is due to expire.
+     */
+    public void refresh(){
+        B2Session current = getSession();
+        client.refresh(current);
+        synchronized(this){
+            issued = System.currentTimeMillis();
+            save();
+        }
+    }
+
+    /**
+     * Refreshes the token when it is close to expiring. A token replaced by the client after it had already
+     * expired is noticed here too, so that the cache file is kept up to date.
+     */
+    private void check(){
+        try {
+            synchronized(this){
+                if(!session.getAuthToken().equals(savedToken)){
+                    issued = System.currentTimeMillis();
+                    save();
+                }
+                if(System.currentTimeMillis() < issued + tokenLifetime - refreshMargin) return;
+            }
+            refresh();
+        } catch (RuntimeException ignored) {
+            //The next check will try again, and requests reauthorize by themselves if the token expires first
+        }
+    }
+
+    /**
+     * Loads the session from the cache file, if it belongs to this account and has not yet expired.
+     */
+    private B2Session load(){
+        if(cacheFile == null || !cacheFile.isFile()) return null;
+
+        Properties properties = new Properties();
+        try(Reader reader = new InputStreamReader(new FileInputStream(cacheFile), StandardCharsets.UTF_8)){
+            properties.load(reader);
+        } catch (IOException ex) {
+            return null;
+        }
+
+        String token = properties.getProperty("authorizationToken");
+        String APIURL = properties.getProperty("apiUrl");
+        String downloadURL = properties.getProperty("downloadUrl");
+        if(!accountID.equals(properties.getProperty("accountId")) || token == null || APIURL == null || downloadURL == null) return null;
+
+        long cachedIssued;
+        try {
+            cachedIssued = Long.parseLong(properties.getProperty("issued", ""));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        if(System.currentTimeMillis() >= cachedIssued + tokenLifetime) return null;
+
+        issued = cachedIssued;
+        savedToken = token;
+        return new B2Session(token, accountID, APIURL, downloadURL);
+    }
+
+    /**
+     * Saves the session to the cache file, readable only by the current user where the file system allows it.
+     * The cache only saves authorizing again on the next start, so a failure is logged rather than thrown.
+     */
+    private void save(){
+        savedToken = session.getAuthToken();
+        if(cacheFile == null) return;
+
+        Properties properties = new Properties();
+        properties.setProperty("accountId", accountID);
+        properties.setProperty("authorizationToken", session.getAuthToken());
+        properties.setProperty("apiUrl", session.getAPIURL());
+        properties.setProperty("downloadUrl", session.getDownloadURL());
+        properties.setProperty("issued", Long.toString(issued));
+
+        Path temporary = null;
+        try {
+            //Created readable only by the current user before the token is written, so it is never exposed
+            Path directory = cacheFile.getAbsoluteFile().getParentFile().toPath();
+            if(directory.getFileSystem().supportedFileAttributeViews().contains("posix")){
+                temporary = Files.createTempFile(directory, cacheFile.getName(), ".tmp",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            }else{
+                temporary = Files.createTempFile(directory, cacheFile.getName(), ".tmp");
+            }
+            try(Writer writer = new OutputStreamWriter(Files.newOutputStream(temporary), StandardCharsets.UTF_8)){
+                properties.store(writer, "JB2 session cache");
+            }
+
+            try {
+                Files.move(temporary, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporary = null;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to save session to " + cacheFile.getPath(), ex);
+        } finally {
+            if(temporary != null){
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Stops refreshing the token in the background. The session can still be used until its token expires.
+     */
+    @Override
+    public synchronized void close(){
+        if(scheduler != null) scheduler.shutdownNow();
+    }
+
+    /**
+     * Sets the file which the session is loaded from and saved to. The file contains the authorization token,
+     * so should be kept somewhere only the current user can read.
+     *
+     * @param cacheFile Location of the cache file, or null to authorize every time a manager is created
+     */
+    public synchronized void setCacheFile(File cacheFile){
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Sets how long an authorization token remains valid after it is issued.
+     *
+     * @param tokenLifetime Lifetime in milliseconds, which is 24 hours unless B2 changes it
+     */
+    public synchronized void setTokenLifetime(long tokenLifetime){
+        this.tokenLifetime = tokenLifetime;
+    }
+
+    /**
+     * Sets how long before the token expires it should be refreshed.
+     *
+     * @param refreshMargin Milliseconds before expiry, which is one hour by default
+     */
+    public synchronized void setRefreshMargin(long refreshMargin){
+        this.refreshMargin = refreshMargin;
+    }
+
+}
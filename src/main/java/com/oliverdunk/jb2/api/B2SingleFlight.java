@@ -0,0 +1,72 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent operations, so that while one thread is running an operation for a key, any
+ * other thread asking for the same key waits for that result instead of starting its own request.
+ * Nothing is cached; once the operation completes, the next call for the key runs it again.
+ *
+ * @param <K> Type of the keys which identify identical operations
+ * @param <V> Type of the results
+ */
+class B2SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Runs an operation, or waits for the result of the same operation if another thread is already running it.
+     * A failure is thrown to every thread which was waiting for the result.
+     *
+     * @param key Identifies the operation, and must include anything which could change its result
+     * @param operation The operation, which should be read-only
+     * @return The result of the operation
+     */
+    V execute(K key, Supplier<V> operation){
+        CompletableFuture<V> created = new CompletableFuture<V>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if(existing != null){
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            V result = operation.get();
+            created.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            created.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future){
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if(ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            if(ex.getCause() instanceof Error) throw (Error) ex.getCause();
+            throw new B2APIException("Shared request failed", ex.getCause());
+        }
+    }
+
+    /**
+     * Gets the number of calls which shared the result of another call instead of running the operation.
+     *
+     * @return Number of coalesced calls
+     */
+    long getCoalescedCount(){
+        return coalesced.get();
+    }
+
+}
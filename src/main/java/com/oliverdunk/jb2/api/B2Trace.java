@@ -0,0 +1,221 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.http.B2Connection;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Collects what happens during one call for a B2Instrumentation. The trace of the call running on a thread is
+ * held in a thread local, so connections opened by the call can be counted without passing the trace through
+ * every method. Each connection keeps the trace it was opened under, so a stream can be read from any thread.
+ */
+class B2Trace {
+
+    private static final ThreadLocal<B2Trace> CURRENT = new ThreadLocal<B2Trace>();
+
+    private final String method;
+    private final long startTime = System.currentTimeMillis(), start = System.nanoTime();
+    //Guarded by this trace, since a download stream may be read by a different thread to the one it was opened on.
+    private int statusCode, retries;
+    private long timeToFirstByte = -1, bytesSent, bytesReceived, queueWait;
+
+    /**
+     * Constructs a B2Trace, starting the clock.
+     *
+     * @param method Name of the API method being called
+     */
+    B2Trace(String method){
+        this.method = method;
+    }
+
+    /**
+     * Gets the trace of the call running on this thread.
+     *
+     * @return The trace, or null if no call is being traced
+     */
+    static B2Trace current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this the trace of the call running on this thread.
+     *
+     * @return The trace which was running before, which must be passed to exit
+     */
+    B2Trace enter(){
+        B2Trace previous = CURRENT.get();
+        CURRENT.set(this);
+        return previous;
+    }
+
+    /**
+     * Goes back to the trace which was running before enter was called.
+     *
+     * @param previous The trace returned by enter
+     */
+    static void exit(B2Trace previous){
+        if(previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+
+    String getMethod(){
+        return method;
+    }
+
+    synchronized void retried(){
+        retries++;
+    }
+
+    /**
+     * Counts time spent waiting for a transfer slot or for bandwidth towards this trace.
+     *
+     * @param nanos Time spent waiting in nanoseconds
+     */
+    synchronized void waited(long nanos){
+        queueWait += nanos;
+    }
+
+    private synchronized void responded(long sentAt, int statusCode){
+        this.timeToFirstByte = System.nanoTime() - sentAt;
+        this.statusCode = statusCode;
+    }
+
+    private synchronized void sent(long bytes){
+        bytesSent += bytes;
+    }
+
+    private synchronized void received(long bytes){
+        bytesReceived += bytes;
+    }
+
+    /**
+     * Wraps a connection so that its timing and the bytes sent and received count towards this trace.
+     *
+     * @param connection The connection which has just been opened
+     * @return The wrapped connection
+     */
+    B2Connection wrap(B2Connection connection){
+        return new TracedConnection(connection);
+    }
+
+    /**
+     * Stops the clock.
+     *
+     * @param failure The exception which the call failed with, or null if it succeeded
+     * @return The record of the call
+     */
+    synchronized B2Call finish(Throwable failure){
+        int status = statusCode;
+        String errorCode = null;
+        if(failure instanceof B2APIException){
+            B2APIException exception = (B2APIException) failure;
+            //Failures such as dropped connections carry no status, so keep that of the last response
+            if(exception.getStatusCode() != 0) status = exception.getStatusCode();
+            errorCode = exception.getIdentifier();
+        }
+        return new B2Call(method, status, errorCode, startTime, timeToFirstByte, System.nanoTime() - start,
+                bytesSent, bytesReceived, retries, queueWait, failure);
+    }
+
+    private class TracedConnection implements B2Connection {
+
+        private final B2Connection connection;
+        //Time the request was sent, which is when the body is finished if there is one.
+        private long sentAt = System.nanoTime();
+        private boolean responded;
+
+        private TracedConnection(B2Connection connection){
+            this.connection = connection;
+        }
+
+        /**
+         * Records the time to first byte the first time any part of the response is asked for.
+         */
+        private void respond() throws IOException {
+            if(responded) return;
+            int statusCode = connection.getStatusCode();
+            responded = true;
+            responded(sentAt, statusCode);
+        }
+
+        @Override
+        public void setHeader(String name, String value){
+            connection.setHeader(name, value);
+        }
+
+        @Override
+        public OutputStream getOutputStream(long length) throws IOException {
+            return new FilterOutputStream(connection.getOutputStream(length)){
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    sent(1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                    sent(length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    //Uploading the body is not waiting for B2, so the time to first byte starts afterwards
+                    sentAt = System.nanoTime();
+                }
+            };
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            respond();
+            return connection.getStatusCode();
+        }
+
+        @Override
+        public String getHeader(String name) throws IOException {
+            respond();
+            return connection.getHeader(name);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            respond();
+            return new FilterInputStream(connection.getInputStream()){
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if(b != -1) received(1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) throws IOException {
+                    int count = in.read(bytes, offset, length);
+                    if(count > 0) received(count);
+                    return count;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long count = in.skip(n);
+                    received(count);
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public void close(){
+            connection.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.oliverdunk.jb2.api;
+
+/**
+ * Priority classes which share bandwidth under a B2BandwidthScheduler. While several classes are waiting,
+ * each receives bandwidth in proportion to its weight, so bulk transfers still make progress while
+ * interactive transfers are busy, and use all of the bandwidth when nothing else needs it.
+ */
+public enum B2TransferPriority {
+
+    //Transfers which someone is waiting for, such as restores.
+    INTERACTIVE(8),
+    NORMAL(4),
+    //Transfers which can run in the background, such as backups.
+    BULK(1);
+
+    private final int defaultWeight;
+
+    B2TransferPriority(int defaultWeight){
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * Gets the share of bandwidth given to this class unless the scheduler is configured otherwise.
+     *
+     * @return The default weight
+     */
+    public int getDefaultWeight(){
+        return defaultWeight;
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local record of a resumable large file upload, holding the ID of the large file and the SHA1 hash of each
+ * part once it has been uploaded. Each part is appended and forced to disk as soon as it completes, so a crash
+ * loses at most the parts which were still in flight. A record cut short by a crash is ignored when loading.
+ */
+class B2UploadJournal implements Closeable {
+
+    //First bytes of a journal file, "JB2J".
+    private static final int MAGIC = 0x4a42324a;
+    private static final int VERSION = 1;
+    private static final int SHA1_LENGTH = 20;
+    private static final int RECORD_LENGTH = 4 + SHA1_LENGTH;
+
+    private final String key, largeFileID;
+    //Hashes of completed parts by part number, guarded by this journal.
+    private final Map<Integer, String> partHashes;
+    private final FileChannel channel;
+
+    private B2UploadJournal(String key, String largeFileID, Map<Integer, String> partHashes, FileChannel channel){
+        this.key = key;
+        this.largeFileID = largeFileID;
+        this.partHashes = partHashes;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens an existing journal.
+     *
+     * @param file Location of the journal
+     * @return The journal, or null if there is no readable journal
+     */
+    static B2UploadJournal open(File file){
+        if(!file.isFile()) return null;
+
+        String key, largeFileID;
+        Map<Integer, String> partHashes = new HashMap<Integer, String>();
+        long validLength;
+        try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            if(inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION) return null;
+            key = inputStream.readUTF();
+            largeFileID = inputStream.readUTF();
+            validLength = 8 + utfLength(key) + utfLength(largeFileID);
+
+            byte[] hash = new byte[SHA1_LENGTH];
+            while(true){
+                int partNumber;
+                try {
+                    partNumber = inputStream.readInt();
+                    inputStream.readFully(hash);
+                } catch (EOFException ex) {
+                    break;
+                }
+                partHashes.put(partNumber, B2Client.toHex(hash));
+                validLength += RECORD_LENGTH;
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            //Drop any record cut short by a crash, so new records start on a boundary
+            channel.truncate(validLength);
+            channel.position(validLength);
+            return new B2UploadJournal(key, largeFileID, partHashes, channel);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to open upload journal " + file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Creates a new journal, replacing any existing journal in the same location.
+     *
+     * @param file Location of the journal
+     * @param key Describes the upload, so a journal for a different upload is not resumed
+     * @param largeFileID ID of the large file which the parts are uploaded to
+     * @return The new journal
+     */
+    static B2UploadJournal create(File file, String key, String largeFileID){
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream outputStream = new DataOutputStream(header);
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeUTF(key);
+            outputStream.writeUTF(largeFileID);
+
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer buffer = ByteBuffer.wrap(header.toByteArray());
+            while(buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+            return new B2UploadJournal(key, largeFileID, new HashMap<Integer, String>(), channel);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to create upload journal " + file.getPath(), ex);
+        }
+    }
+
+    private static int utfLength(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(value);
+        return bytes.size();
+    }
+
+    /**
+     * Records that a part has been uploaded, forcing the record to disk before returning.
+     *
+     * @param partNumber The number of the part, starting at 1
+     * @param hash The SHA1 hash of the part in hex
+     */
+    synchronized void putPart(int partNumber, String hash){
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+        record.putInt(partNumber);
+        record.put(B2HashIndex.fromHex(hash));
+        record.flip();
+
+        try {
+            while(record.hasRemaining()) channel.write(record);
+            channel.force(false);
+        } catch (IOException ex) {
+            throw new B2APIException("Failed to write upload journal", ex);
+        }
+        partHashes.put(partNumber, hash);
+    }
+
+    /**
+     * Gets the hash recorded for a part.
+     *
+     * @param partNumber The number of the part, starting at 1
+     * @return The SHA1 hash in hex, or null if the part has not been recorded
+     */
+    synchronized String getPart(int partNumber){
+        return partHashes.get(partNumber);
+    }
+
+    /**
+     * Gets the description of the upload which the journal was created for.
+     *
+     * @return The key passed to create
+     */
+    String getKey(){
+        return key;
+    }
+
+    /**
+     * Gets the ID of the large file which the parts are uploaded to.
+     *
+     * @return The large file ID
+     */
+    String getLargeFileID(){
+        return largeFileID;
+    }
+
+    @Override
+    public void close(){
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.oliverdunk.jb2.api;
+
+import com.oliverdunk.jb2.exceptions.B2APIException;
+import com.oliverdunk.jb2.models.B2Bucket;
+import com.oliverdunk.jb2.models.B2File;
+import com.oliverdunk.jb2.models.B2Session;
+import com.oliverdunk.jb2.models.B2UploadRequest;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Thread-safe pool of upload URLs, grouped by bucket. B2 only allows one upload at a time on each URL, so
+ * concurrent uploaders lease a B2UploadRequest, use it, and then release it back to the pool for reuse.
+ * This avoids a b2_get_upload_url request for every upload once the pool is warm. Idle URLs are dropped
+ * once they reach the maximum age, since their tokens stop working after 24 hours.
+ */
+public class B2UploadPool {
+
+    private final B2Client client;
+    private final B2Session session;
+    private final ConcurrentMap<String, Queue<B2UploadRequest>> idle = new ConcurrentHashMap<String, Queue<B2UploadRequest>>();
+    //Time each URL was fetched, by identity, so old URLs are not handed out after their token has expired.
+    private final ConcurrentMap<B2UploadRequest, Long> fetched = new ConcurrentHashMap<B2UploadRequest, Long>();
+    private final AtomicInteger leased = new AtomicInteger();
+    private volatile int maxIdle = 16;
+    private volatile long maxAge = TimeUnit.HOURS.toNanos(23);
+
+    /**
+     * Constructs a B2UploadPool which fetches upload URLs using the given session and the shared B2API client.
+     *
+     * @param session Session authenticated with the API, which will be used as Authorization
+     */
+    public B2UploadPool(B2Session session){
+        this(B2API.getClient(), session);
+    }
+
+    /**
+     * Constructs a B2UploadPool which fetches upload URLs and uploads files using the given client.
+     *
+     * @param client The B2Client used for all requests made by this pool
+     * @param session Session authenticated with the API, which will be used as Authorization
+     */
+    public B2UploadPool(B2Client client, B2Session session){
+        this.client = client;
+        this.session = session;
+    }
+
+    /**
+     * Fetches upload URLs ahead of time, so the first uploads to a bucket do not need to wait for them.
+     *
+     * @param bucket The B2Bucket where uploads will take place
+     * @param count Number of upload URLs which should be fetched
+     */
+    public void prewarm(B2Bucket bucket, int count){
+        Queue<B2UploadRequest> queue = getQueue(bucket);
+        for(int i = 0; i < count && queue.size() < maxIdle; i++) queue.offer(fetch(bucket));
+    }
+
+    /**
+     * Leases an upload URL for a bucket, fetching a new one if none are idle. The caller has exclusive use of
+     * the URL until it is passed to release or discard.
+     *
+     * @param bucket The B2Bucket where the upload will take place
+     * @return A B2UploadRequest which is not in use by any other thread
+     */
+    public B2UploadRequest lease(B2Bucket bucket){
+        Queue<B2UploadRequest> queue = getQueue(bucket);
+        B2UploadRequest upload = queue.poll();
+        while(upload != null && isExpired(upload)){
+            fetched.remove(upload);
+            upload = queue.poll();
+        }
+        if(upload == null) upload = fetch(bucket);
+        leased.incrementAndGet();
+        return upload;
+    }
+
+    /**
+     * Returns a leased upload URL to the pool after a successful upload. If the pool already holds the
+     * maximum number of idle URLs for the bucket, or the URL has reached the maximum age, it is dropped instead.
+     *
+     * @param upload An upload request which was leased from this pool
+     */
+    public void release(B2UploadRequest upload){
+        leased.decrementAndGet();
+        Queue<B2UploadRequest> queue = getQueue(upload.getBucket());
+        //URLs which were not fetched by this pool are treated as new
+        fetched.putIfAbsent(upload, System.nanoTime());
+        if(queue.size() < maxIdle && !isExpired(upload)) queue.offer(upload);
+        else fetched.remove(upload);
+    }
+
+    /**
+     * Drops a leased upload URL which should not be used again, such as after the server rejected it.
+     *
+     * @param upload An upload request which was leased from this pool
+     */
+    public void discard(B2UploadRequest upload){
+        leased.decrementAndGet();
+        fetched.remove(upload);
+    }
+
+    /**
+     * Uploads a file using a leased upload URL. If the upload fails because the URL has expired or its
+     * server is busy, the URL is discarded and the upload is retried with a fresh one, following the
+     * upload budget of the client's B2RetryPolicy.
+     *
+     * @param bucket The B2Bucket where the upload will take place
+     * @param file The file which should be uploaded
+     * @param name The name which should identify the file
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2Bucket bucket, File file, String name){
+        return upload(bucket, name, upload -> client.uploadFile(upload, file, name));
+    }
+
+    /**
+     * Uploads the remaining bytes of a ByteBuffer using a leased upload URL, retrying in the same way as
+     * files. The position of the buffer is not changed.
+     *
+     * @param bucket The B2Bucket where the upload will take place
+     * @param data Buffer containing the data which should be uploaded, which may be direct or memory-mapped
+     * @param name The name which should identify the file
+     * @param sha1 The SHA1 hash of the data in hex if it is already known, or null to compute it
+     * @return A B2File instance
+     */
+    public B2File uploadFile(B2Bucket bucket, ByteBuffer data, String name, String sha1){
+        //Hash once, rather than on every attempt
+        final String hash = client.getHash(data, name, sha1);
+        return upload(bucket, name, upload -> client.uploadFile(upload, data, name, hash));
+    }
+
+    private B2File upload(B2Bucket bucket, String name, Function<B2UploadRequest, B2File> attempt){
+        return client.trace(B2Client.UPLOAD_FILE, () -> client.retry(session, true, "Upload of " + name, () -> {
+            B2UploadRequest upload = lease(bucket);
+            try {
+                B2File result = attempt.apply(upload);
+                release(upload);
+                return result;
+            } catch (RuntimeException ex) {
+                //Every lease must be returned or discarded, whatever went wrong
+                if(ex instanceof B2APIException && requiresNewURL((B2APIException) ex)) discard(upload);
+                else release(upload);
+                throw ex;
+            }
+        }));
+    }
+
+    /**
+     * Checks whether an upload failure means that the upload URL should not be used again.
+     * B2 expects a new URL after an expired token, a busy server or a broken connection. Failures of local
+     * files are wrapped in the same way as broken connections, but say nothing about the URL, so it is kept.
+     *
+     * @param ex The exception which caused the upload to fail
+     * @return True if the upload URL should be discarded
+     */
+    static boolean requiresNewURL(B2APIException ex){
+        int status = ex.getStatusCode();
+        return status == 401 || status == 408 || status == 503 || (status == 0 && ex.getCause() != null
+                && !(ex.getCause() instanceof UncheckedIOException));
+    }
+
+    private B2UploadRequest fetch(B2Bucket bucket){
+        B2UploadRequest upload = client.getUploadURL(session, bucket);
+        fetched.put(upload, System.nanoTime());
+        return upload;
+    }
+
+    private boolean isExpired(B2UploadRequest upload){
+        Long fetchedAt = fetched.get(upload);
+        return fetchedAt != null && System.nanoTime() - fetchedAt >= maxAge;
+    }
+
+    private Queue<B2UploadRequest> getQueue(B2Bucket bucket){
+        Queue<B2UploadRequest> queue = idle.get(bucket.getID());
+        if(queue == null){
+            Queue<B2UploadRequest> created = new ConcurrentLinkedQueue<B2UploadRequest>();
+            queue = idle.putIfAbsent(bucket.getID(), created);
+            if(queue == null) queue = created;
+        }
+        return queue;
+    }
+
+    /**
+     * Gets the number of upload URLs which are currently idle for a bucket.
+     *
+     * @param bucket The B2Bucket which should be checked
+     * @return Number of URLs ready to be leased without a request to the API
+     */
+    public int getIdleCount(B2Bucket bucket){
+        return getQueue(bucket).size();
+    }
+
+    /**
+     * Gets the number of upload URLs which are currently leased to uploaders.
+     *
+     * @return Number of URLs which have not yet been released or discarded
+     */
+    public int getLeasedCount(){
+        return leased.get();
+    }
+
+    /**
+     * Sets the largest number of idle upload URLs kept for each bucket.
+     *
+     * @param maxIdle Maximum number of idle URLs per bucket
+     */
+    public void setMaxIdle(int maxIdle){
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Sets how long an upload URL may be kept before it is dropped instead of being leased again. This
+     * should be less than the 24 hours for which B2 accepts the token of an upload URL.
+     *
+     * @param maxAge Milliseconds after which an idle URL is dropped
+     */
+    public void setMaxAge(long maxAge){
+        this.maxAge = TimeUnit.MILLISECONDS.toNanos(maxAge);
+    }
+
+}
@@ -7,7 +7,7 @@ package com.oliverdunk.jb2.exceptions;
 public class B2APIException extends RuntimeException {
 
     private String errorMessage, identifier;
-    private int statusCode;
+    private int statusCode, retryAfter;
 
     /**
      * Constructs new B2APIException with the specified errorMessage.
@@ -18,6 +18,17 @@ public class B2APIException extends RuntimeException {
         setErrorMessage(errorMessage);
     }
 
+    /**
+     * Constructs new B2APIException with the specified errorMessage and cause.
+     *
+     * @param errorMessage An error message describing what went wrong
+     * @param cause The underlying error which caused this exception
+     */
+    public B2APIException(String errorMessage, Throwable cause){
+        super(cause);
+        setErrorMessage(errorMessage);
+    }
+
     /**
      * Sets the status code for this exception.
      *
@@ -36,6 +47,15 @@ public class B2APIException extends RuntimeException {
         this.identifier = identifier;
     }
 
+    /**
+     * Sets how long the B2 API asked clients to wait before retrying, using the Retry-After header.
+     *
+     * @param retryAfter Seconds to wait, or 0 if the API did not say
+     */
+    public void setRetryAfter(int retryAfter){
+        this.retryAfter = retryAfter;
+    }
+
     /**
      * Sets the error message for this exception.
      *
@@ -63,6 +83,15 @@ public class B2APIException extends RuntimeException {
         return identifier;
     }
 
+    /**
+     * Returns how long the B2 API asked clients to wait before retrying.
+     *
+     * @return Seconds to wait, or 0 if the API did not say
+     */
+    public int getRetryAfter(){
+        return retryAfter;
+    }
+
     /**
      * Returns the error message for this exception.
      *
@@ -72,4 +101,10 @@ public class B2APIException extends RuntimeException {
         return errorMessage;
     }
 
+    @Override
+    public String getMessage(){
+        if(statusCode == 0) return errorMessage;
+        return errorMessage + " (" + statusCode + (identifier != null ? " " + identifier : "") + ")";
+    }
+
 }
\ No newline at end of file
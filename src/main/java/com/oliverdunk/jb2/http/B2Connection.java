@@ -0,0 +1,64 @@
+package com.oliverdunk.jb2.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Represents a single HTTP request and its response, opened by a B2Transport.
+ * Headers must be set before the body is written, and the body must be written before the response is read.
+ */
+public interface B2Connection extends Closeable {
+
+    /**
+     * Sets a request header.
+     *
+     * @param name Name of the header
+     * @param value Value of the header
+     */
+    void setHeader(String name, String value);
+
+    /**
+     * Gets the stream which the request body should be written to. The stream must be closed once exactly
+     * the given number of bytes have been written.
+     *
+     * @param length Number of bytes which will be written
+     * @return OutputStream for the request body
+     * @throws IOException Thrown if the request could not be sent
+     */
+    OutputStream getOutputStream(long length) throws IOException;
+
+    /**
+     * Gets the HTTP status code of the response, waiting for it if necessary.
+     *
+     * @return The status code returned by the server
+     * @throws IOException Thrown if the response could not be read
+     */
+    int getStatusCode() throws IOException;
+
+    /**
+     * Gets a response header.
+     *
+     * @param name Name of the header
+     * @return Value of the header, or null if it was not sent
+     * @throws IOException Thrown if the response could not be read
+     */
+    String getHeader(String name) throws IOException;
+
+    /**
+     * Gets the body of the response, whether or not the status code represents an error.
+     *
+     * @return InputStream for the response body
+     * @throws IOException Thrown if the response could not be read
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * Releases the connection. Any unread part of the response body is drained when it is small, so the
+     * underlying connection can be reused for later requests.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,20 @@
+package com.oliverdunk.jb2.http;
+
+import java.io.IOException;
+
+/**
+ * Sends HTTP requests on behalf of a B2Client. Implementations must be thread-safe, and should reuse
+ * connections between requests where possible.
+ */
+public interface B2Transport {
+
+    /**
+     * Opens a POST request to the given URL. No data is sent until the body is written.
+     *
+     * @param URL The full URL which the request should be sent to
+     * @return A connection which headers and the request body can be written to
+     * @throws IOException Thrown if the request could not be opened
+     */
+    B2Connection open(String URL) throws IOException;
+
+}
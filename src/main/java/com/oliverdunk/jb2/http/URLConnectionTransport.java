@@ -0,0 +1,125 @@
+package com.oliverdunk.jb2.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * B2Transport which uses the HttpURLConnection built in to Java. Responses which were read are drained before
+ * the connection is released, which lets the JDK keep-alive cache reuse connections instead of paying for a new
+ * TLS handshake on every request. The number of idle connections kept per host is set using the
+ * http.maxConnections system property.
+ */
+public class URLConnectionTransport implements B2Transport {
+
+    //Largest number of unread response bytes which will be drained to keep a connection alive.
+    private static final int MAX_DRAIN = 64 * 1024;
+    //Largest request body which is buffered rather than streamed.
+    private static final int MAX_BUFFERED = 64 * 1024;
+
+    private final int connectTimeout, readTimeout;
+
+    /**
+     * Constructs a URLConnectionTransport with a 10 second connect timeout and a 60 second read timeout.
+     */
+    public URLConnectionTransport(){
+        this(10 * 1000, 60 * 1000);
+    }
+
+    /**
+     * Constructs a URLConnectionTransport with the given timeouts.
+     *
+     * @param connectTimeout Milliseconds to wait for a connection to be established, or 0 to wait forever
+     * @param readTimeout Milliseconds to wait for data from the server, or 0 to wait forever
+     */
+    public URLConnectionTransport(int connectTimeout, int readTimeout){
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public B2Connection open(String URL) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(URL).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setDoOutput(true);
+        return new Connection(connection);
+    }
+
+    private static class Connection implements B2Connection {
+
+        private final HttpURLConnection connection;
+        private InputStream inputStream;
+        //Whether the response has started to be read, without which there is nothing worth draining.
+        private boolean responded;
+
+        private Connection(HttpURLConnection connection){
+            this.connection = connection;
+        }
+
+        @Override
+        public void setHeader(String name, String value){
+            connection.setRequestProperty(name, value);
+        }
+
+        @Override
+        public OutputStream getOutputStream(long length) throws IOException {
+            //Without a fixed length, HttpURLConnection buffers the whole body in memory. That is kept for small
+            //bodies, because a streamed request cannot read the body of a 401 response, which says if the token expired.
+            if(length > MAX_BUFFERED) connection.setFixedLengthStreamingMode(length);
+            return connection.getOutputStream();
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            int statusCode = connection.getResponseCode();
+            responded = true;
+            return statusCode;
+        }
+
+        @Override
+        public String getHeader(String name) throws IOException {
+            getStatusCode();
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if(inputStream == null){
+                if(getStatusCode() < 400) inputStream = connection.getInputStream();
+                else inputStream = connection.getErrorStream();
+                if(inputStream == null) inputStream = new ByteArrayInputStream(new byte[0]);
+            }
+            return inputStream;
+        }
+
+        @Override
+        public void close(){
+            //A request which was abandoned before its response, such as after failing to write the body,
+            //may never get one, so waiting for it would block the caller.
+            if(!responded){
+                connection.disconnect();
+                return;
+            }
+
+            try {
+                InputStream body = getInputStream();
+                byte[] buffer = new byte[4096];
+                int drained = 0, read = 0;
+                while(drained < MAX_DRAIN && (read = body.read(buffer)) != -1) drained += read;
+
+                //Closing a fully read stream returns the connection to the keep-alive cache
+                if(read == -1) body.close();
+                else connection.disconnect();
+            } catch (IOException ex) {
+                connection.disconnect();
+            }
+        }
+
+    }
+
+}
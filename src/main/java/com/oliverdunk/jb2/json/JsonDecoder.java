@@ -0,0 +1,21 @@
+package com.oliverdunk.jb2.json;
+
+import java.io.IOException;
+
+/**
+ * Decodes a value from a JsonReader, typically straight into a model object.
+ *
+ * @param <T> The type of value which is decoded
+ */
+public interface JsonDecoder<T> {
+
+    /**
+     * Decodes a value, leaving the reader positioned after it.
+     *
+     * @param reader Reader positioned at the start of the value
+     * @return The decoded value
+     * @throws IOException Thrown if the source could not be read or is not in the expected format
+     */
+    T decode(JsonReader reader) throws IOException;
+
+}
@@ -0,0 +1,103 @@
+package com.oliverdunk.jb2.json;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The top level string, number and boolean members of a JSON object, for responses where only a few
+ * fields are needed. Nested objects and arrays are skipped without being decoded.
+ */
+public class JsonFields {
+
+    private final Map<String, String> fields = new HashMap<String, String>();
+
+    /**
+     * Reads an object from a JsonReader, keeping its top level values.
+     *
+     * @param reader Reader positioned at the start of an object
+     * @return The values of the object
+     * @throws IOException Thrown if the source could not be read or is not valid JSON
+     */
+    public static JsonFields read(JsonReader reader) throws IOException {
+        JsonFields result = new JsonFields();
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            switch(reader.peek()){
+                case STRING:
+                    result.fields.put(name, reader.nextString());
+                    break;
+                case NUMBER:
+                    result.fields.put(name, Long.toString(reader.nextLong()));
+                    break;
+                case BOOLEAN:
+                    result.fields.put(name, Boolean.toString(reader.nextBoolean()));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+
+    /**
+     * Checks whether the object had a non-null value for a member.
+     *
+     * @param name The member name
+     * @return True if the member had a string, number or boolean value
+     */
+    public boolean has(String name){
+        return fields.containsKey(name);
+    }
+
+    /**
+     * Gets a required string member.
+     *
+     * @param name The member name
+     * @return The value of the member
+     * @throws IllegalStateException Thrown if the member was missing
+     */
+    public String getString(String name){
+        String value = fields.get(name);
+        if(value == null) throw new IllegalStateException("Response is missing " + name);
+        return value;
+    }
+
+    /**
+     * Gets an optional string member.
+     *
+     * @param name The member name
+     * @param fallback Value returned if the member was missing
+     * @return The value of the member, or the fallback
+     */
+    public String optString(String name, String fallback){
+        String value = fields.get(name);
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * Gets a required numeric member.
+     *
+     * @param name The member name
+     * @return The value of the member
+     * @throws IllegalStateException Thrown if the member was missing
+     */
+    public long getLong(String name){
+        return Long.parseLong(getString(name));
+    }
+
+    /**
+     * Gets an optional numeric member.
+     *
+     * @param name The member name
+     * @param fallback Value returned if the member was missing
+     * @return The value of the member, or the fallback
+     */
+    public long optLong(String name, long fallback){
+        String value = fields.get(name);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+
+}
@@ -0,0 +1,339 @@
+package com.oliverdunk.jb2.json;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull parser which reads JSON one token at a time, so responses can be decoded straight into models
+ * without building a tree of every value first. Commas between values are handled by hasNext, so a
+ * typical loop over an object is:
+ * <pre>
+ * reader.beginObject();
+ * while(reader.hasNext()){
+ *     String name = reader.nextName();
+ *     ...
+ * }
+ * reader.endObject();
+ * </pre>
+ */
+public class JsonReader {
+
+    /**
+     * The kinds of token which can be returned by peek.
+     */
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder builder = new StringBuilder();
+    private int position, limit;
+
+    /**
+     * Constructs a JsonReader which reads from the given Reader. The Reader is buffered internally.
+     *
+     * @param reader Source of the JSON text
+     */
+    public JsonReader(Reader reader){
+        this.reader = reader;
+    }
+
+    /**
+     * Checks the kind of the next token without consuming it.
+     *
+     * @return The kind of the next token
+     * @throws IOException Thrown if the source could not be read
+     */
+    public Token peek() throws IOException {
+        int c = peekChar();
+        switch(c){
+            case -1: return Token.END_DOCUMENT;
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '"': return Token.STRING;
+            case 't': case 'f': return Token.BOOLEAN;
+            case 'n': return Token.NULL;
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')) return Token.NUMBER;
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Checks whether the current object or array has another member, consuming the comma before it.
+     *
+     * @return True if another name or value follows
+     * @throws IOException Thrown if the source could not be read
+     */
+    public boolean hasNext() throws IOException {
+        int c = peekChar();
+        if(c == ','){
+            position++;
+            return true;
+        }
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * Consumes the opening brace of an object.
+     *
+     * @throws IOException Thrown if the source could not be read or the next token is different
+     */
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    /**
+     * Consumes the closing brace of an object.
+     *
+     * @throws IOException Thrown if the source could not be read or the next token is different
+     */
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    /**
+     * Consumes the opening bracket of an array.
+     *
+     * @throws IOException Thrown if the source could not be read or the next token is different
+     */
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    /**
+     * Consumes the closing bracket of an array.
+     *
+     * @throws IOException Thrown if the source could not be read or the next token is different
+     */
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * Reads the name of the next member of an object, and the colon which follows it.
+     *
+     * @return The member name
+     * @throws IOException Thrown if the source could not be read or the next token is not a name
+     */
+    public String nextName() throws IOException {
+        String name = readString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads a string value. A null literal is returned as null.
+     *
+     * @return The string value, or null
+     * @throws IOException Thrown if the source could not be read or the next token is not a string
+     */
+    public String nextString() throws IOException {
+        if(peekChar() == 'n'){
+            nextNull();
+            return null;
+        }
+        return readString();
+    }
+
+    /**
+     * Reads a numeric value as a long. Values with a fraction or exponent are truncated.
+     *
+     * @return The numeric value
+     * @throws IOException Thrown if the source could not be read or the next token is not a number
+     */
+    public long nextLong() throws IOException {
+        int c = peekChar();
+        boolean negative = c == '-';
+        if(negative) position++;
+
+        long value = 0;
+        int digits = 0;
+        while(fill() && (c = buffer[position]) >= '0' && c <= '9'){
+            value = value * 10 + (c - '0');
+            position++;
+            digits++;
+        }
+        if(digits == 0) throw syntaxError("Expected a number");
+
+        //Fall back to parsing as a double for the rare values which are not plain integers
+        if(fill() && (c == '.' || c == 'e' || c == 'E')){
+            builder.setLength(0);
+            builder.append(negative ? "-" : "").append(value);
+            while(fill() && isNumberChar(c = buffer[position])){
+                builder.append((char) c);
+                position++;
+            }
+            return (long) Double.parseDouble(builder.toString());
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a numeric value as an int.
+     *
+     * @return The numeric value
+     * @throws IOException Thrown if the source could not be read or the next token is not a number
+     */
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    /**
+     * Reads a boolean value.
+     *
+     * @return The boolean value
+     * @throws IOException Thrown if the source could not be read or the next token is not a boolean
+     */
+    public boolean nextBoolean() throws IOException {
+        if(peekChar() == 't'){
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    /**
+     * Reads a null literal.
+     *
+     * @throws IOException Thrown if the source could not be read or the next token is not null
+     */
+    public void nextNull() throws IOException {
+        expectLiteral("null");
+    }
+
+    /**
+     * Skips the next value, including every value nested inside it.
+     *
+     * @throws IOException Thrown if the source could not be read or is not valid JSON
+     */
+    public void skipValue() throws IOException {
+        switch(peek()){
+            case BEGIN_OBJECT:
+                beginObject();
+                while(hasNext()){
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                while(hasNext()) skipValue();
+                endArray();
+                break;
+            case STRING:
+                readString();
+                break;
+            case NUMBER:
+                nextLong();
+                break;
+            case BOOLEAN:
+                nextBoolean();
+                break;
+            case NULL:
+                nextNull();
+                break;
+            default:
+                throw syntaxError("Expected a value");
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        builder.setLength(0);
+
+        while(true){
+            int start = position;
+            while(position < limit){
+                char c = buffer[position];
+                if(c == '"' || c == '\\') break;
+                position++;
+            }
+            builder.append(buffer, start, position - start);
+
+            if(!fill()) throw syntaxError("Unterminated string");
+            char c = buffer[position];
+            //The string carried on past the end of the buffer, which has just been refilled
+            if(c != '"' && c != '\\') continue;
+            position++;
+            if(c == '"') return builder.toString();
+            if(c == '\\') builder.append(readEscape());
+        }
+    }
+
+    private char readEscape() throws IOException {
+        if(!fill()) throw syntaxError("Unterminated escape");
+        char c = buffer[position++];
+        switch(c){
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int value = 0;
+                for(int i = 0; i < 4; i++){
+                    if(!fill()) throw syntaxError("Unterminated escape");
+                    int digit = Character.digit(buffer[position++], 16);
+                    if(digit < 0) throw syntaxError("Invalid unicode escape");
+                    value = value * 16 + digit;
+                }
+                return (char) value;
+            default:
+                return c;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if(peekChar() != expected) throw syntaxError("Expected '" + expected + "'");
+        position++;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        peekChar();
+        for(int i = 0; i < literal.length(); i++){
+            if(!fill() || buffer[position] != literal.charAt(i)) throw syntaxError("Expected " + literal);
+            position++;
+        }
+    }
+
+    /**
+     * Skips whitespace and returns the next character without consuming it.
+     */
+    private int peekChar() throws IOException {
+        while(fill()){
+            char c = buffer[position];
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+        return -1;
+    }
+
+    /**
+     * Makes sure at least one character is buffered.
+     *
+     * @return False if the end of the source has been reached
+     */
+    private boolean fill() throws IOException {
+        if(position < limit) return true;
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if(limit > 0) return true;
+        limit = 0;
+        return false;
+    }
+
+    private static boolean isNumberChar(int c){
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    private IOException syntaxError(String message){
+        return new IOException("Malformed JSON: " + message);
+    }
+
+}
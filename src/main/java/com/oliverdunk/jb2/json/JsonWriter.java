@@ -0,0 +1,205 @@
+package com.oliverdunk.jb2.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes JSON directly into a UTF-8 byte buffer, so request bodies can be sent without first building a
+ * tree of values and converting it to a String. Commas are added automatically, for example:
+ * <pre>
+ * new JsonWriter().beginObject().name("bucketId").value(ID).endObject();
+ * </pre>
+ */
+public class JsonWriter {
+
+    private byte[] bytes = new byte[128];
+    private int size;
+    //Whether the current object or array already contains a value, one bit per level of nesting.
+    private long nonEmpty;
+    private int depth;
+    private boolean afterName;
+
+    /**
+     * Starts a new object.
+     *
+     * @return This JsonWriter
+     */
+    public JsonWriter beginObject(){
+        beforeValue();
+        return open('{');
+    }
+
+    /**
+     * Ends the current object.
+     *
+     * @return This JsonWriter
+     */
+    public JsonWriter endObject(){
+        return close('}');
+    }
+
+    /**
+     * Starts a new array.
+     *
+     * @return This JsonWriter
+     */
+    public JsonWriter beginArray(){
+        beforeValue();
+        return open('[');
+    }
+
+    /**
+     * Ends the current array.
+     *
+     * @return This JsonWriter
+     */
+    public JsonWriter endArray(){
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name The member name
+     * @return This JsonWriter
+     */
+    public JsonWriter name(String name){
+        beforeValue();
+        writeString(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a string value, or null if the value is null.
+     *
+     * @param value The value to write
+     * @return This JsonWriter
+     */
+    public JsonWriter value(String value){
+        beforeValue();
+        if(value == null) writeASCII("null");
+        else writeString(value);
+        return this;
+    }
+
+    /**
+     * Writes a numeric value.
+     *
+     * @param value The value to write
+     * @return This JsonWriter
+     */
+    public JsonWriter value(long value){
+        beforeValue();
+        writeASCII(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param value The value to write
+     * @return This JsonWriter
+     */
+    public JsonWriter value(boolean value){
+        beforeValue();
+        writeASCII(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return Length of the UTF-8 encoded JSON
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Writes the encoded JSON to an OutputStream.
+     *
+     * @param outputStream Stream which the JSON will be written to
+     * @throws IOException Thrown if the stream could not be written to
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(bytes, 0, size);
+    }
+
+    /**
+     * Gets a copy of the encoded JSON.
+     *
+     * @return The UTF-8 encoded JSON
+     */
+    public byte[] toByteArray(){
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private JsonWriter open(char c){
+        if(depth == 63) throw new IllegalStateException("JSON is nested too deeply");
+        write(c);
+        depth++;
+        nonEmpty &= ~(1L << depth);
+        return this;
+    }
+
+    private JsonWriter close(char c){
+        if(depth == 0) throw new IllegalStateException("Nothing to close");
+        write(c);
+        depth--;
+        return this;
+    }
+
+    /**
+     * Writes a comma if the current object or array already has a value, unless a name was just written.
+     */
+    private void beforeValue(){
+        if(afterName){
+            afterName = false;
+            return;
+        }
+        if((nonEmpty & (1L << depth)) != 0) write(',');
+        nonEmpty |= 1L << depth;
+    }
+
+    private void writeString(String value){
+        write('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                write('\\');
+                write(c);
+            }else if(c < 0x20){
+                writeASCII(String.format("\\u%04x", (int) c));
+            }else if(c < 0x80){
+                write(c);
+            }else if(c < 0x800){
+                write(0xc0 | (c >> 6));
+                write(0x80 | (c & 0x3f));
+            }else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                write(0xf0 | (codePoint >> 18));
+                write(0x80 | ((codePoint >> 12) & 0x3f));
+                write(0x80 | ((codePoint >> 6) & 0x3f));
+                write(0x80 | (codePoint & 0x3f));
+            }else{
+                write(0xe0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3f));
+                write(0x80 | (c & 0x3f));
+            }
+        }
+        write('"');
+    }
+
+    private void writeASCII(String value){
+        for(int i = 0; i < value.length(); i++) write(value.charAt(i));
+    }
+
+    private void write(int b){
+        if(size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+        bytes[size++] = (byte) b;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.oliverdunk.jb2.models;
+
+import java.util.List;
+
+/**
+ * Represents the outcome of copying many files at once.
+ */
+public class B2CopyResult {
+
+    private long copied, bytes;
+    private List<B2File> failed;
+
+    /**
+     * Constructs a B2CopyResult.
+     *
+     * @param copied Number of files which were copied
+     * @param bytes Total size of the files which were copied
+     * @param failed Files which could not be copied, after any retries
+     */
+    public B2CopyResult(long copied, long bytes, List<B2File> failed){
+        this.copied = copied;
+        this.bytes = bytes;
+        this.failed = failed;
+    }
+
+    /**
+     * Gets the number of files which were copied.
+     *
+     * @return Number of copied files
+     */
+    public long getCopied(){
+        return copied;
+    }
+
+    /**
+     * Gets the total size of the files which were copied.
+     *
+     * @return Number of bytes
+     */
+    public long getBytes(){
+        return bytes;
+    }
+
+    /**
+     * Gets the files which could not be copied.
+     *
+     * @return Failed files, which is empty if every copy succeeded
+     */
+    public List<B2File> getFailed(){
+        return failed;
+    }
+
+}
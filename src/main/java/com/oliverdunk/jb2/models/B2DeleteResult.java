@@ -0,0 +1,53 @@
+package com.oliverdunk.jb2.models;
+
+import java.util.List;
+
+/**
+ * Represents the outcome of deleting many file versions at once.
+ */
+public class B2DeleteResult {
+
+    private long deleted, kept;
+    private List<B2File> failed;
+
+    /**
+     * Constructs a B2DeleteResult.
+     *
+     * @param deleted Number of versions which were deleted
+     * @param kept Number of versions which were kept by the retention policy
+     * @param failed Versions which could not be deleted, after any retries
+     */
+    public B2DeleteResult(long deleted, long kept, List<B2File> failed){
+        this.deleted = deleted;
+        this.kept = kept;
+        this.failed = failed;
+    }
+
+    /**
+     * Gets the number of versions which were deleted.
+     *
+     * @return Number of deleted versions
+     */
+    public long getDeleted(){
+        return deleted;
+    }
+
+    /**
+     * Gets the number of versions which were kept by the retention policy.
+     *
+     * @return Number of kept versions
+     */
+    public long getKept(){
+        return kept;
+    }
+
+    /**
+     * Gets the versions which could not be deleted.
+     *
+     * @return Failed versions, which is empty if every deletion succeeded
+     */
+    public List<B2File> getFailed(){
+        return failed;
+    }
+
+}
@@ -5,7 +5,7 @@ package com.oliverdunk.jb2.models;
  */
 public class B2File {
 
-    private String name, contentType, ID;
+    private String name, contentType, ID, contentSha1;
     private long size, uploadTimestamp;
 
     /**
@@ -25,6 +25,21 @@ public class B2File {
         this.uploadTimestamp = uploadTimestamp;
     }
 
+    /**
+     * Constructs a B2File with a known SHA1 hash.
+     *
+     * @param name The fileName which is stored on the B2 cloud
+     * @param contentType Automatically picked content type in MIME format
+     * @param ID Unique file identifier
+     * @param size Number of bytes in the file
+     * @param uploadTimestamp UTC based epoch time when the file was uploaded
+     * @param contentSha1 SHA1 hash of the file contents in hex, or null if it is not known
+     */
+    public B2File(String name, String contentType, String ID, long size, long uploadTimestamp, String contentSha1){
+        this(name, contentType, ID, size, uploadTimestamp);
+        this.contentSha1 = contentSha1;
+    }
+
     /**
      * Gets the name.
      *
@@ -70,4 +85,14 @@ public class B2File {
         return uploadTimestamp;
     }
 
+    /**
+     * Gets the SHA1 hash of the file contents. Large files only have a hash if one was supplied when
+     * they were started.
+     *
+     * @return SHA1 hash in hex, or null if it is not known
+     */
+    public String getContentSha1(){
+        return contentSha1;
+    }
+
 }
@@ -0,0 +1,63 @@
+package com.oliverdunk.jb2.models;
+
+import java.util.List;
+
+/**
+ * Represents one page of results returned by the b2_list_file_names or b2_list_file_versions methods.
+ */
+public class B2FilePage {
+
+    private List<B2File> files;
+    private String nextFileName, nextFileID;
+
+    /**
+     * Constructs a B2FilePage.
+     *
+     * @param files The files returned in this page
+     * @param nextFileName The file name which the next page starts at, or null if this is the last page
+     */
+    public B2FilePage(List<B2File> files, String nextFileName){
+        this.files = files;
+        this.nextFileName = nextFileName;
+    }
+
+    /**
+     * Constructs a B2FilePage of file versions.
+     *
+     * @param files The file versions returned in this page
+     * @param nextFileName The file name which the next page starts at, or null if this is the last page
+     * @param nextFileID The file ID which the next page starts at, or null if this is the last page
+     */
+    public B2FilePage(List<B2File> files, String nextFileName, String nextFileID){
+        this(files, nextFileName);
+        this.nextFileID = nextFileID;
+    }
+
+    /**
+     * Gets the files returned in this page.
+     *
+     * @return The files in this page, in order of name
+     */
+    public List<B2File> getFiles(){
+        return files;
+    }
+
+    /**
+     * Gets the file name which the next page starts at.
+     *
+     * @return The startFileName for the next request, or null if this is the last page
+     */
+    public String getNextFileName(){
+        return nextFileName;
+    }
+
+    /**
+     * Gets the file ID which the next page of file versions starts at.
+     *
+     * @return The startFileId for the next request, or null if this is the last page or the page lists names
+     */
+    public String getNextFileID(){
+        return nextFileID;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.oliverdunk.jb2.models;
+
+/**
+ * Represents a part of an unfinished large file which has been uploaded, as returned by b2_list_parts.
+ */
+public class B2Part {
+
+    private int partNumber;
+    private long contentLength;
+    private String contentSha1;
+
+    /**
+     * Constructs a B2Part instance.
+     *
+     * @param partNumber The number of the part, starting at 1
+     * @param contentLength Number of bytes in the part
+     * @param contentSha1 SHA1 hash of the part in hex
+     */
+    public B2Part(int partNumber, long contentLength, String contentSha1){
+        this.partNumber = partNumber;
+        this.contentLength = contentLength;
+        this.contentSha1 = contentSha1;
+    }
+
+    /**
+     * Gets the partNumber.
+     *
+     * @return The number of the part, starting at 1
+     */
+    public int getPartNumber(){
+        return partNumber;
+    }
+
+    /**
+     * Gets the contentLength.
+     *
+     * @return Number of bytes in the part
+     */
+    public long getContentLength(){
+        return contentLength;
+    }
+
+    /**
+     * Gets the contentSha1.
+     *
+     * @return SHA1 hash of the part in hex
+     */
+    public String getContentSha1(){
+        return contentSha1;
+    }
+
+}
@@ -5,7 +5,9 @@ package com.oliverdunk.jb2.models;
  */
 public class B2Session {
 
-    private String authorizationToken, accountID, APIURL, downloadURL;
+    private final String accountID;
+    //Replaced as a whole, so a refresh never exposes a token alongside URLs from a different authorization.
+    private volatile Values values;
 
     /**
      * Constructs a B2Session using values which are returned by the B2 API.
@@ -16,10 +18,8 @@ public class B2Session {
      * @param downloadURL Represents the download URL which should be used for retrieving files
      */
     public B2Session(String authorizationToken, String accountID, String APIURL, String downloadURL){
-        this.authorizationToken = authorizationToken;
         this.accountID = accountID;
-        this.APIURL = APIURL;
-        this.downloadURL = downloadURL;
+        this.values = new Values(authorizationToken, APIURL, downloadURL);
     }
 
     /**
@@ -28,7 +28,7 @@ public class B2Session {
      * @return Authorization used for the HTTP Authorization header in future requests
      */
     public String getAuthToken(){
-        return authorizationToken;
+        return values.authorizationToken;
     }
 
     /**
@@ -46,7 +46,7 @@ public class B2Session {
      * @return APIURL which should be used for further requests
      */
     public String getAPIURL(){
-        return APIURL;
+        return values.APIURL;
     }
 
     /**
@@ -55,7 +55,31 @@ public class B2Session {
      * @return downloadURL which should be used when retrieving files
      */
     public String getDownloadURL(){
-        return downloadURL;
+        return values.downloadURL;
+    }
+
+    /**
+     * Replaces the values of this session after the account has been authorized again, so that every holder
+     * of the session uses the new authorization token.
+     *
+     * @param authorizationToken Represents the new authorizationToken returned by B2
+     * @param APIURL Represents the api URI which should be used for further API calls
+     * @param downloadURL Represents the download URL which should be used for retrieving files
+     */
+    public void update(String authorizationToken, String APIURL, String downloadURL){
+        this.values = new Values(authorizationToken, APIURL, downloadURL);
+    }
+
+    private static class Values {
+
+        private final String authorizationToken, APIURL, downloadURL;
+
+        private Values(String authorizationToken, String APIURL, String downloadURL){
+            this.authorizationToken = authorizationToken;
+            this.APIURL = APIURL;
+            this.downloadURL = downloadURL;
+        }
+
     }
 
 }
@@ -0,0 +1,66 @@
+package com.oliverdunk.jb2.models;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents the outcome of syncing a local directory to a bucket.
+ */
+public class B2SyncResult {
+
+    private List<B2File> uploaded;
+    private int unchanged, hashed;
+    private Map<String, RuntimeException> failures;
+
+    /**
+     * Constructs a B2SyncResult.
+     *
+     * @param uploaded Files which were new or changed, and were uploaded
+     * @param unchanged Number of files which already matched the bucket
+     * @param hashed Number of local files which had to be read to compute their hash
+     * @param failures Errors for files which could not be synced, keyed by file name in the bucket
+     */
+    public B2SyncResult(List<B2File> uploaded, int unchanged, int hashed, Map<String, RuntimeException> failures){
+        this.uploaded = uploaded;
+        this.unchanged = unchanged;
+        this.hashed = hashed;
+        this.failures = failures;
+    }
+
+    /**
+     * Gets the files which were uploaded.
+     *
+     * @return Files which were new or changed
+     */
+    public List<B2File> getUploaded(){
+        return uploaded;
+    }
+
+    /**
+     * Gets the number of files which were skipped because they already matched the bucket.
+     *
+     * @return Number of unchanged files
+     */
+    public int getUnchanged(){
+        return unchanged;
+    }
+
+    /**
+     * Gets the number of local files which had to be hashed, because the hash index had no current hash.
+     *
+     * @return Number of files which were read to compute their hash
+     */
+    public int getHashed(){
+        return hashed;
+    }
+
+    /**
+     * Gets the errors for files which could not be synced.
+     *
+     * @return Errors keyed by file name in the bucket, which is empty if every file was synced
+     */
+    public Map<String, RuntimeException> getFailures(){
+        return failures;
+    }
+
+}
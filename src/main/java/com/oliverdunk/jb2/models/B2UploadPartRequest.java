@@ -0,0 +1,51 @@
+package com.oliverdunk.jb2.models;
+
+/**
+ * Represents an upload URL obtained using the b2_get_upload_part_url method, used for uploading parts of a large file.
+ */
+public class B2UploadPartRequest {
+
+    private B2File file;
+    private String uploadURL, authorizationToken;
+
+    /**
+     * Constructs a B2UploadPartRequest instance.
+     *
+     * @param file The large file which the parts will be uploaded to
+     * @param uploadURL The URL which should be used for uploading the parts
+     * @param authorizationToken A token which will be used to authenticate the upload
+     */
+    public B2UploadPartRequest(B2File file, String uploadURL, String authorizationToken){
+        this.file = file;
+        this.uploadURL = uploadURL;
+        this.authorizationToken = authorizationToken;
+    }
+
+    /**
+     * Gets the large file which the parts will be uploaded to.
+     *
+     * @return A B2File representing the unfinished large file
+     */
+    public B2File getFile(){
+        return file;
+    }
+
+    /**
+     * Gets the uploadURL.
+     *
+     * @return The URL which should be used for uploading the parts
+     */
+    public String getUploadURL(){
+        return uploadURL;
+    }
+
+    /**
+     * Gets the authorizationToken.
+     *
+     * @return A token which will be used to authenticate the upload
+     */
+    public String getAuthorizationToken(){
+        return authorizationToken;
+    }
+
+}
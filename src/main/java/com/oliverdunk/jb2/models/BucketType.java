@@ -1,9 +1,19 @@
 package com.oliverdunk.jb2.models;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum BucketType {
     ALL_PUBLIC("allPublic"),
     ALL_PRIVATE("allPrivate");
 
+    //Types by identifier, so parsing a bucket does not scan every type.
+    private static final Map<String, BucketType> BY_IDENTIFIER = new HashMap<String, BucketType>();
+
+    static {
+        for(BucketType type : values()) BY_IDENTIFIER.put(type.identifier, type);
+    }
+
     private String identifier;
 
     /**
@@ -24,11 +34,14 @@ public enum BucketType {
         return identifier;
     }
 
+    /**
+     * Finds the type with an identifier used by the B2 API.
+     *
+     * @param name Internal identifier for the type used by the B2 API
+     * @return The matching type, or null if the identifier is not known
+     */
     public static BucketType getByIdentifier(String name){
-        for(BucketType type : BucketType.values()){
-            if(type.getIdentifier().equals(name)) return type;
-        }
-        return null;
+        return BY_IDENTIFIER.get(name);
     }
 
 }